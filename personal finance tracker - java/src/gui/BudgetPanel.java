@@ -5,8 +5,9 @@ import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.time.LocalDate;
 import models.*;
+import util.Money;
 
-public class BudgetPanel extends JPanel {
+public class BudgetPanel extends JPanel implements ChangeAwarePanel {
     private MainFrame mainFrame;
     private JTable budgetTable;
     private DefaultTableModel tableModel;
@@ -16,6 +17,8 @@ public class BudgetPanel extends JPanel {
     private JSpinner yearSpinner;
     private JButton addButton;
     private JButton deleteButton;
+    private boolean budgetsStale;
+    private boolean categoriesStale;
     
     public BudgetPanel(MainFrame mainFrame) {
         this.mainFrame = mainFrame;
@@ -83,9 +86,10 @@ public class BudgetPanel extends JPanel {
     }
     
     private void updateCategoryCombo() {
+        categoriesStale = false;
         categoryCombo.removeAllItems();
         mainFrame.getCategories().stream()
-            .filter(c -> c.getType().equals("Expense"))
+            .filter(c -> c.getType() == TransactionType.EXPENSE)
             .forEach(c -> categoryCombo.addItem(c.getName()));
     }
     
@@ -105,7 +109,7 @@ public class BudgetPanel extends JPanel {
                 return;
             }
             
-            double amount = Double.parseDouble(amountText);
+            long amount = Money.parse(amountText);
             if (amount <= 0) {
                 JOptionPane.showMessageDialog(this, "Amount must be greater than zero", 
                     "Validation Error", JOptionPane.WARNING_MESSAGE);
@@ -127,11 +131,7 @@ public class BudgetPanel extends JPanel {
                     "Budget already exists for this category and period. Replace it?",
                     "Duplicate Budget", JOptionPane.YES_NO_OPTION);
                 if (confirm == JOptionPane.YES_OPTION) {
-                    // Remove existing budget
-                    mainFrame.getBudgets().removeIf(b -> 
-                        b.getCategory().equals(category) && 
-                        b.getMonth() == month && 
-                        b.getYear() == year);
+                    // Replaces the existing budget
                     mainFrame.addBudget(newBudget);
                     amountField.setText("");
                     JOptionPane.showMessageDialog(this, "Budget updated successfully!", 
@@ -184,17 +184,34 @@ public class BudgetPanel extends JPanel {
         }
     }
     
+    @Override
+    public void markStale(DataChange change) {
+        if (change.getKind() == DataChange.Kind.BUDGETS) budgetsStale = true;
+        if (change.getKind() == DataChange.Kind.CATEGORIES) categoriesStale = true;
+    }
+    
+    @Override
+    public void refreshIfStale() {
+        if (budgetsStale) refreshTable();
+        if (categoriesStale) updateCategoryCombo();
+    }
+    
     public void refresh() {
+        refreshTable();
+        updateCategoryCombo();
+    }
+    
+    private void refreshTable() {
+        budgetsStale = false;
         tableModel.setRowCount(0);
         for (Budget b : mainFrame.getBudgets()) {
             tableModel.addRow(new Object[]{
                 b.getCategory(),
-                String.format("₹%.2f", b.getAmount()),
+                String.format("₹%.2f", Money.toDecimal(b.getAmount())),
                 String.valueOf(b.getMonth()),
                 String.valueOf(b.getYear())
             });
         }
-        updateCategoryCombo();
     }
 }
 
@@ -5,14 +5,15 @@ import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import models.*;
 
-public class CategoryPanel extends JPanel {
+public class CategoryPanel extends JPanel implements ChangeAwarePanel {
     private MainFrame mainFrame;
     private JTable categoryTable;
     private DefaultTableModel tableModel;
     private JTextField nameField;
-    private JComboBox<String> typeCombo;
+    private JComboBox<TransactionType> typeCombo;
     private JButton addButton;
     private JButton deleteButton;
+    private boolean stale;
     
     public CategoryPanel(MainFrame mainFrame) {
         this.mainFrame = mainFrame;
@@ -24,7 +25,7 @@ public class CategoryPanel extends JPanel {
         nameField = new JTextField(15);
         formPanel.add(nameField);
         formPanel.add(new JLabel("Type:"));
-        typeCombo = new JComboBox<>(new String[]{"Income", "Expense"});
+        typeCombo = new JComboBox<>(TransactionType.values());
         formPanel.add(typeCombo);
         addButton = new JButton("Add Category");
         addButton.addActionListener(e -> addCategory());
@@ -57,7 +58,7 @@ public class CategoryPanel extends JPanel {
     
     private void addCategory() {
         String name = nameField.getText().trim();
-        String type = (String) typeCombo.getSelectedItem();
+        TransactionType type = (TransactionType) typeCombo.getSelectedItem();
         
         if (name.isEmpty()) {
             JOptionPane.showMessageDialog(this, "Please enter a category name", 
@@ -88,12 +89,13 @@ public class CategoryPanel extends JPanel {
         }
         
         String name = (String) tableModel.getValueAt(selectedRow, 0);
-        String type = (String) tableModel.getValueAt(selectedRow, 1);
+        TransactionType type = TransactionType.fromLabel((String) tableModel.getValueAt(selectedRow, 1));
         Category category = new Category(name, type);
         
-        // Check if category is used in transactions
-        boolean isUsed = mainFrame.getTransactions().stream()
-            .anyMatch(t -> t.getCategory().equals(name));
+        // Check if category is used in transactions; history still on disk
+        // is answered from the partition index rather than loaded
+        boolean isUsed = mainFrame.isCategoryUsedInUnloaded(name)
+            || mainFrame.getRepository().read(store -> store.containsCategory(name));
         
         if (isUsed) {
             int confirm = JOptionPane.showConfirmDialog(this, 
@@ -114,10 +116,21 @@ public class CategoryPanel extends JPanel {
         }
     }
     
+    @Override
+    public void markStale(DataChange change) {
+        if (change.getKind() == DataChange.Kind.CATEGORIES) stale = true;
+    }
+    
+    @Override
+    public void refreshIfStale() {
+        if (stale) refresh();
+    }
+    
     public void refresh() {
+        stale = false;
         tableModel.setRowCount(0);
         for (Category c : mainFrame.getCategories()) {
-            tableModel.addRow(new Object[]{c.getName(), c.getType()});
+            tableModel.addRow(new Object[]{c.getName(), c.getType().getLabel()});
         }
     }
 }
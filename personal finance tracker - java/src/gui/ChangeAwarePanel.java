@@ -0,0 +1,10 @@
+package gui;
+
+// A tab that recomputes lazily: changes only mark its views stale, and the
+// work happens when the tab is showing
+public interface ChangeAwarePanel {
+    void markStale(DataChange change);
+    
+    // Recomputes whatever was marked stale, if anything
+    void refreshIfStale();
+}
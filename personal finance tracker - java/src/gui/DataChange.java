@@ -0,0 +1,40 @@
+package gui;
+
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+// A change made through MainFrame, published to every panel so each can
+// mark the views it shows as stale. Transaction and budget changes carry
+// the months they touch. HISTORY means older transactions were read from
+// disk: totals are unchanged, but the rows held in memory are not.
+public class DataChange {
+    public enum Kind { TRANSACTIONS, CATEGORIES, BUDGETS, HISTORY }
+    
+    private final Kind kind;
+    private final Set<YearMonth> months;
+    
+    public DataChange(Kind kind, YearMonth... months) {
+        this.kind = kind;
+        this.months = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(months)));
+    }
+    
+    public Kind getKind() { return kind; }
+    
+    public Set<YearMonth> getMonths() { return months; }
+    
+    public boolean affects(YearMonth month) {
+        return months.contains(month);
+    }
+    
+    // True when a touched month is the given month or earlier, which is what
+    // running balances and year-to-date totals depend on
+    public boolean affectsUpTo(YearMonth month) {
+        for (YearMonth touched : months) {
+            if (!touched.isAfter(month)) return true;
+        }
+        return false;
+    }
+}
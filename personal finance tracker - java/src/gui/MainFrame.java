@@ -1,14 +1,34 @@
 package gui;
 
 import javax.swing.*;
+import java.time.YearMonth;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import models.*;
 import util.FileManager;
+import util.FinanceRepository;
+import util.PersistenceService;
 
 public class MainFrame extends JFrame {
-    private List<Transaction> transactions;
-    private List<Category> categories;
-    private List<Budget> budgets;
+    private FinanceRepository repository;
+    private PersistenceService persistence;
+    
+    // Startup only reads the months the statistics and report tabs open on;
+    // older partitions are read on demand. loadedFrom is null once all are loaded.
+    private static final int STARTUP_MONTHS = 2;
+    private YearMonth loadedFrom;
+    private List<FileManager.PartitionSummary> unloadedPartitions = new ArrayList<>();
+    private long unloadedBalance;
+    // Reads older history off the event thread, one load at a time
+    private final ExecutorService historyLoader = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "history-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // The last load queued on historyLoader, until its rows are added
+    private HistoryLoad queuedLoad;
     
     private JTabbedPane tabbedPane;
     private TransactionPanel transactionPanel;
@@ -16,6 +36,10 @@ public class MainFrame extends JFrame {
     private BudgetPanel budgetPanel;
     private ReportPanel reportPanel;
     private StatisticsPanel statisticsPanel;
+    private List<ChangeAwarePanel> panels;
+    // Set while a refresh of the visible tab is queued, so a burst of
+    // changes in one event costs one recompute
+    private boolean refreshQueued;
     
     public MainFrame() {
         setTitle("Personal Finance Tracker");
@@ -25,9 +49,19 @@ public class MainFrame extends JFrame {
         
         // Initialize data
         FileManager.initializeDataDirectory();
-        transactions = FileManager.loadTransactions();
-        categories = FileManager.loadCategories();
-        budgets = FileManager.loadBudgets();
+        YearMonth from = YearMonth.now().minusMonths(STARTUP_MONTHS - 1);
+        if (!FileManager.isJournalMonthsKnown()) {
+            from = null;
+        } else {
+            // Months with pending journal changes must be in memory before compaction
+            for (YearMonth month : FileManager.getJournalMonths()) {
+                if (month.isBefore(from)) from = month;
+            }
+        }
+        repository = new FinanceRepository(FileManager.loadTransactions(from, null),
+            FileManager.loadCategories(), FileManager.loadBudgets());
+        setLoadedFrom(from);
+        persistence = new PersistenceService();
         
         // Create tabbed pane
         tabbedPane = new JTabbedPane();
@@ -45,6 +79,9 @@ public class MainFrame extends JFrame {
         tabbedPane.addTab("Budgets", budgetPanel);
         tabbedPane.addTab("Reports", reportPanel);
         tabbedPane.addTab("Statistics", statisticsPanel);
+        panels = List.of(transactionPanel, categoryPanel, budgetPanel, reportPanel, statisticsPanel);
+        // Hidden tabs catch up on changes when they are shown
+        tabbedPane.addChangeListener(e -> refreshVisiblePanel());
         
         add(tabbedPane);
         
@@ -53,82 +90,241 @@ public class MainFrame extends JFrame {
             @Override
             public void windowClosing(java.awt.event.WindowEvent windowEvent) {
                 saveAllData();
+                persistence.shutdown();
                 System.exit(0);
             }
         });
     }
     
-    public List<Transaction> getTransactions() {
-        return transactions;
+    public FinanceRepository getRepository() {
+        return repository;
+    }
+    
+    private void setLoadedFrom(YearMonth from) {
+        unloadedPartitions = new ArrayList<>();
+        if (from != null) {
+            for (FileManager.PartitionSummary summary : FileManager.getPartitionSummaries()) {
+                if (summary.getMonth().isBefore(from)) unloadedPartitions.add(summary);
+            }
+        }
+        loadedFrom = unloadedPartitions.isEmpty() ? null : from;
+        long[] totals = getUnloadedTotals(null, null);
+        unloadedBalance = totals[0] - totals[1];
+    }
+    
+    // Makes sure every transaction dated in or after the given month is in memory
+    public void ensureLoaded(YearMonth month) {
+        if (loadedFrom == null || !month.isBefore(loadedFrom)) return;
+        repository.prependHistory(FileManager.loadTransactions(month, loadedFrom));
+        setLoadedFrom(month);
+        publish(new DataChange(DataChange.Kind.HISTORY));
+    }
+    
+    public boolean isAllLoaded() {
+        return loadedFrom == null;
+    }
+    
+    // Whether every transaction dated in or after the month is in memory;
+    // a null month asks for all history
+    public boolean isLoaded(YearMonth month) {
+        return loadedFrom == null || (month != null && !month.isBefore(loadedFrom));
+    }
+    
+    // A read of older history from the given month (null for all), and what
+    // to run on the event thread once its rows are added
+    private static class HistoryLoad {
+        final YearMonth from;
+        final List<Runnable> then = new ArrayList<>();
+        
+        HistoryLoad(YearMonth from) {
+            this.from = from;
+        }
+        
+        boolean covers(YearMonth month) {
+            return from == null || (month != null && !month.isBefore(from));
+        }
+    }
+    
+    // Like ensureLoaded, but the files are read on a background thread; the
+    // rows are added and then runs on the event thread. Runs right away
+    // when the month is already loaded, and joins a queued load that
+    // already reaches back far enough rather than reading again.
+    public void loadInBackground(YearMonth month, Runnable then) {
+        if (isLoaded(month)) {
+            then.run();
+            return;
+        }
+        if (queuedLoad != null && queuedLoad.covers(month)) {
+            queuedLoad.then.add(then);
+            return;
+        }
+        HistoryLoad load = new HistoryLoad(month);
+        load.then.add(then);
+        queuedLoad = load;
+        YearMonth until = loadedFrom;
+        historyLoader.execute(() -> {
+            List<Transaction> history = FileManager.loadTransactions(month, until);
+            SwingUtilities.invokeLater(() -> {
+                if (queuedLoad == load) queuedLoad = null;
+                addHistory(month, history);
+                for (Runnable next : load.then) {
+                    next.run();
+                }
+            });
+        });
+    }
+    
+    // Adds rows read in the background from the month up to where loading
+    // stood when the read started. Loads made meanwhile may already have
+    // brought in some of those months; their rows are dropped here.
+    private void addHistory(YearMonth month, List<Transaction> history) {
+        if (isLoaded(month)) return;
+        YearMonth until = loadedFrom;
+        history.removeIf(t -> !YearMonth.from(t.getDate()).isBefore(until));
+        repository.prependHistory(history);
+        setLoadedFrom(month);
+        publish(new DataChange(DataChange.Kind.HISTORY));
     }
     
+    public YearMonth getLoadedFrom() {
+        return loadedFrom;
+    }
+    
+    // Rows of history still on disk, read from the partition index
+    public int getUnloadedCount() {
+        int count = 0;
+        for (FileManager.PartitionSummary summary : unloadedPartitions) {
+            count += summary.getRows();
+        }
+        return count;
+    }
+    
+    // Income minus expenses of all history still on disk, which is older than
+    // every loaded row
+    public long getUnloadedBalance() {
+        return unloadedBalance;
+    }
+    
+    // Whether any history still on disk uses the category, from the partition index
+    public boolean isCategoryUsedInUnloaded(String category) {
+        for (FileManager.PartitionSummary summary : unloadedPartitions) {
+            if (summary.getCategories().contains(category)) return true;
+        }
+        return false;
+    }
+    
+    // Income and expenses of history still on disk dated within [from, to];
+    // either bound may be null
+    public long[] getUnloadedTotals(YearMonth from, YearMonth to) {
+        long[] totals = new long[2];
+        for (FileManager.PartitionSummary summary : unloadedPartitions) {
+            YearMonth month = summary.getMonth();
+            if ((from == null || !month.isBefore(from)) && (to == null || !month.isAfter(to))) {
+                totals[0] += summary.getIncome();
+                totals[1] += summary.getExpenses();
+            }
+        }
+        return totals;
+    }
+    
+    // Read-only snapshots; changes go through the methods below
     public List<Category> getCategories() {
-        return categories;
+        return repository.getCategories();
     }
     
     public List<Budget> getBudgets() {
-        return budgets;
+        return repository.getBudgets();
     }
     
     public void addTransaction(Transaction transaction) {
-        transactions.add(transaction);
-        saveAllData();
-        refreshPanels();
+        ensureLoaded(YearMonth.from(transaction.getDate()));
+        repository.addTransaction(transaction);
+        persistence.journal(FileManager.journalAddRecord(transaction),
+            YearMonth.from(transaction.getDate()));
+        compactIfNeeded();
+        publish(new DataChange(DataChange.Kind.TRANSACTIONS, YearMonth.from(transaction.getDate())));
     }
     
     public void removeTransaction(Transaction transaction) {
-        transactions.remove(transaction);
-        saveAllData();
-        refreshPanels();
+        if (repository.removeTransaction(transaction.getId())) {
+            persistence.journal(FileManager.journalDeleteRecord(transaction),
+                YearMonth.from(transaction.getDate()));
+            compactIfNeeded();
+            publish(new DataChange(DataChange.Kind.TRANSACTIONS, YearMonth.from(transaction.getDate())));
+        }
     }
     
     public void updateTransaction(Transaction oldTransaction, Transaction newTransaction) {
-        int index = transactions.indexOf(oldTransaction);
-        if (index >= 0) {
-            transactions.set(index, newTransaction);
-            saveAllData();
-            refreshPanels();
+        ensureLoaded(YearMonth.from(newTransaction.getDate()));
+        if (repository.updateTransaction(oldTransaction.getId(), newTransaction)) {
+            persistence.journal(FileManager.journalUpdateRecord(oldTransaction, newTransaction),
+                YearMonth.from(oldTransaction.getDate()), YearMonth.from(newTransaction.getDate()));
+            compactIfNeeded();
+            publish(new DataChange(DataChange.Kind.TRANSACTIONS,
+                YearMonth.from(oldTransaction.getDate()), YearMonth.from(newTransaction.getDate())));
         }
     }
     
     public void addCategory(Category category) {
-        if (!categories.contains(category)) {
-            categories.add(category);
-            saveAllData();
-            refreshPanels();
+        if (repository.addCategory(category)) {
+            persistence.saveCategories(repository.getCategories());
+            publish(new DataChange(DataChange.Kind.CATEGORIES));
         }
     }
     
     public void removeCategory(Category category) {
-        categories.remove(category);
-        saveAllData();
-        refreshPanels();
+        if (repository.removeCategory(category)) {
+            persistence.saveCategories(repository.getCategories());
+            publish(new DataChange(DataChange.Kind.CATEGORIES));
+        }
     }
     
+    // Replaces any budget for the same category and month
     public void addBudget(Budget budget) {
-        budgets.add(budget);
-        saveAllData();
-        refreshPanels();
+        repository.putBudget(budget);
+        persistence.saveBudgets(repository.getBudgets());
+        publish(new DataChange(DataChange.Kind.BUDGETS, YearMonth.of(budget.getYear(), budget.getMonth())));
     }
     
     public void removeBudget(Budget budget) {
-        budgets.remove(budget);
-        saveAllData();
-        refreshPanels();
+        if (repository.removeBudget(budget)) {
+            persistence.saveBudgets(repository.getBudgets());
+            publish(new DataChange(DataChange.Kind.BUDGETS, YearMonth.of(budget.getYear(), budget.getMonth())));
+        }
+    }
+    
+    private void compactIfNeeded() {
+        if (persistence.needsCompaction()) {
+            persistence.saveTransactions(repository.snapshotTransactions());
+        }
     }
     
+    // Queued on the persistence writer like any other save; shutdown() then
+    // waits for it, so only one thread ever writes the data files
     private void saveAllData() {
-        FileManager.saveTransactions(transactions);
-        FileManager.saveCategories(categories);
-        FileManager.saveBudgets(budgets);
+        persistence.saveTransactions(repository.snapshotTransactions());
+        persistence.saveCategories(repository.getCategories());
+        persistence.saveBudgets(repository.getBudgets());
+    }
+    
+    // Every panel marks what the change makes stale; only the visible one
+    // recomputes, once the current event has finished making changes
+    private void publish(DataChange change) {
+        for (ChangeAwarePanel panel : panels) {
+            panel.markStale(change);
+        }
+        if (!refreshQueued) {
+            refreshQueued = true;
+            SwingUtilities.invokeLater(this::refreshVisiblePanel);
+        }
     }
     
-    public void refreshPanels() {
-        transactionPanel.refresh();
-        categoryPanel.refresh();
-        budgetPanel.refresh();
-        reportPanel.refresh();
-        statisticsPanel.refresh();
+    private void refreshVisiblePanel() {
+        refreshQueued = false;
+        java.awt.Component selected = tabbedPane.getSelectedComponent();
+        if (selected instanceof ChangeAwarePanel) {
+            ((ChangeAwarePanel) selected).refreshIfStale();
+        }
     }
     
     public static void main(String[] args) {
@@ -3,16 +3,27 @@ package gui;
 import javax.swing.*;
 import java.awt.*;
 import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
 import models.*;
+import util.BudgetEvaluator;
 import util.FinanceCalculator;
+import util.FinanceRepository;
+import util.Money;
+import util.TransactionStore;
+import util.TransactionSummary;
 
-public class ReportPanel extends JPanel {
+public class ReportPanel extends JPanel implements ChangeAwarePanel {
     private MainFrame mainFrame;
     private JTextArea reportArea;
     private JSpinner monthSpinner;
     private JSpinner yearSpinner;
     private JButton generateButton;
     private JButton exportButton;
+    private JProgressBar progressBar;
+    private TextWorker worker;
+    private YearMonth shownMonth;
+    private boolean stale;
     
     public ReportPanel(MainFrame mainFrame) {
         this.mainFrame = mainFrame;
@@ -32,6 +43,13 @@ public class ReportPanel extends JPanel {
         exportButton = new JButton("Export Report");
         exportButton.addActionListener(e -> exportReport());
         controlPanel.add(exportButton);
+        progressBar = new JProgressBar(0, 100);
+        progressBar.setVisible(false);
+        controlPanel.add(progressBar);
+        
+        // A report still being built for the old month is no longer wanted
+        monthSpinner.addChangeListener(e -> cancelWorker());
+        yearSpinner.addChangeListener(e -> cancelWorker());
         add(controlPanel, BorderLayout.NORTH);
         
         // Create report area
@@ -45,104 +63,122 @@ public class ReportPanel extends JPanel {
         refresh();
     }
     
+    // Loads the month and snapshots what the report needs on the event
+    // thread, then builds the text on a worker
     private void generateReport() {
+        // Cancel first: loading history waits for a worker still reading
+        cancelWorker();
         int month = (Integer) monthSpinner.getValue();
         int year = (Integer) yearSpinner.getValue();
+        mainFrame.ensureLoaded(YearMonth.of(year, month));
+        shownMonth = YearMonth.of(year, month);
+        stale = false;
         
+        long[] history = mainFrame.getUnloadedTotals(null, null);
+        List<Budget> budgetList = mainFrame.getBudgets();
+        progressBar.setValue(0);
+        progressBar.setVisible(true);
+        worker = new TextWorker(mainFrame.getRepository(), reportArea, progressBar,
+            (w, repository) -> buildReport(w, repository, month, year, history, budgetList));
+        worker.execute();
+    }
+    
+    private void cancelWorker() {
+        if (worker != null && !worker.isDone()) {
+            worker.cancel(true);
+            progressBar.setVisible(false);
+        }
+    }
+    
+    // Runs on the worker; only gathering the figures holds the read lock
+    private String buildReport(TextWorker worker, FinanceRepository repository, int month, int year,
+            long[] history, List<Budget> budgetList) {
+        ReportData data = repository.read(store -> new ReportData(store, month, year, budgetList));
         StringBuilder report = new StringBuilder();
         report.append("=".repeat(70)).append("\n");
         report.append("FINANCIAL REPORT - ").append(getMonthName(month)).append(" ").append(year).append("\n");
         report.append("=".repeat(70)).append("\n\n");
         
-        // Overall statistics
-        double totalIncome = FinanceCalculator.calculateTotalIncome(mainFrame.getTransactions());
-        double totalExpenses = FinanceCalculator.calculateTotalExpenses(mainFrame.getTransactions());
-        double balance = FinanceCalculator.calculateBalance(mainFrame.getTransactions());
+        // Overall statistics (history not loaded yet comes from the partition index)
+        long totalIncome = data.totalIncome + history[0];
+        long totalExpenses = data.totalExpenses + history[1];
+        long balance = totalIncome - totalExpenses;
         
         report.append("OVERALL STATISTICS (All Time):\n");
         report.append("-".repeat(70)).append("\n");
-        report.append(String.format("Total Income:     ₹%,.2f\n", totalIncome));
-        report.append(String.format("Total Expenses:   ₹%,.2f\n", totalExpenses));
-        report.append(String.format("Balance:          ₹%,.2f\n", balance));
+        report.append(String.format("Total Income:     ₹%,.2f\n", Money.toDecimal(totalIncome)));
+        report.append(String.format("Total Expenses:   ₹%,.2f\n", Money.toDecimal(totalExpenses)));
+        report.append(String.format("Balance:          ₹%,.2f\n", Money.toDecimal(balance)));
         report.append("\n");
         
+        worker.step(25);
+        
         // Monthly statistics
-        var monthlyTransactions = FinanceCalculator.getTransactionsForMonth(
-            mainFrame.getTransactions(), month, year);
-        double monthlyIncome = FinanceCalculator.calculateTotalIncome(monthlyTransactions);
-        double monthlyExpenses = FinanceCalculator.calculateTotalExpenses(monthlyTransactions);
-        double monthlyBalance = monthlyIncome - monthlyExpenses;
+        TransactionSummary monthly = data.monthly;
+        long monthlyIncome = monthly.getIncome();
+        long monthlyExpenses = monthly.getExpenses();
+        long monthlyBalance = monthly.getBalance();
         
         report.append("MONTHLY STATISTICS (").append(getMonthName(month)).append(" ").append(year).append("):\n");
         report.append("-".repeat(70)).append("\n");
-        report.append(String.format("Monthly Income:   ₹%,.2f\n", monthlyIncome));
-        report.append(String.format("Monthly Expenses: ₹%,.2f\n", monthlyExpenses));
-        report.append(String.format("Monthly Balance:  ₹%,.2f\n", monthlyBalance));
+        report.append(String.format("Monthly Income:   ₹%,.2f\n", Money.toDecimal(monthlyIncome)));
+        report.append(String.format("Monthly Expenses: ₹%,.2f\n", Money.toDecimal(monthlyExpenses)));
+        report.append(String.format("Monthly Balance:  ₹%,.2f\n", Money.toDecimal(monthlyBalance)));
         report.append("\n");
         
+        worker.step(50);
+        
         // Expenses by category
-        var expensesByCategory = FinanceCalculator.getExpensesByCategory(monthlyTransactions);
+        var expensesByCategory = monthly.getExpensesByCategory();
         if (!expensesByCategory.isEmpty()) {
             report.append("EXPENSES BY CATEGORY:\n");
             report.append("-".repeat(70)).append("\n");
             expensesByCategory.entrySet().stream()
-                .sorted((a, b) -> Double.compare(b.getValue(), a.getValue()))
+                .sorted((a, b) -> Long.compare(b.getValue(), a.getValue()))
                 .forEach(entry -> {
-                    double percentage = (monthlyExpenses > 0) ? 
-                        (entry.getValue() / monthlyExpenses) * 100 : 0;
+                    double percentage = Money.percentage(entry.getValue(), monthlyExpenses);
                     report.append(String.format("%-25s ₹%,10.2f  (%.1f%%)\n", 
-                        entry.getKey() + ":", entry.getValue(), percentage));
+                        entry.getKey() + ":", Money.toDecimal(entry.getValue()), percentage));
                 });
             report.append("\n");
         }
         
+        worker.step(75);
+        
         // Budget vs Actual
         report.append("BUDGET VS ACTUAL:\n");
         report.append("-".repeat(70)).append("\n");
-        boolean hasBudget = false;
-        double totalBudget = 0;
-        double totalActual = 0;
-        
-        for (Budget budget : mainFrame.getBudgets()) {
-            if (budget.getMonth() == month && budget.getYear() == year) {
-                hasBudget = true;
-                double actual = FinanceCalculator.getCategoryExpenseForMonth(
-                    mainFrame.getTransactions(), budget.getCategory(), month, year);
-                double budgetAmount = budget.getAmount();
-                double difference = budgetAmount - actual;
-                double percentage = (budgetAmount > 0) ? (actual / budgetAmount) * 100 : 0;
-                String status = difference >= 0 ? "Under" : "Over";
-                String statusColor = difference >= 0 ? "✓" : "⚠";
-                
-                totalBudget += budgetAmount;
-                totalActual += actual;
-                
-                report.append(String.format("%-20s Budget: ₹%,10.2f | Actual: ₹%,10.2f | %s: ₹%,10.2f (%s %.1f%%)\n",
-                    budget.getCategory() + ":",
-                    budgetAmount,
-                    actual,
-                    status,
-                    Math.abs(difference),
-                    statusColor,
-                    percentage
-                ));
-            }
+        BudgetEvaluator.Evaluation budgets = data.budgets;
+        
+        for (BudgetEvaluator.BudgetStatus budgetStatus : budgets.getStatuses()) {
+            long difference = budgetStatus.getRemaining();
+            String status = difference >= 0 ? "Under" : "Over";
+            String statusColor = difference >= 0 ? "✓" : "⚠";
+            
+            report.append(String.format("%-20s Budget: ₹%,10.2f | Actual: ₹%,10.2f | %s: ₹%,10.2f (%s %.1f%%)\n",
+                budgetStatus.getBudget().getCategory() + ":",
+                Money.toDecimal(budgetStatus.getBudget().getAmount()),
+                Money.toDecimal(budgetStatus.getActual()),
+                status,
+                Money.toDecimal(Math.abs(difference)),
+                statusColor,
+                budgetStatus.getPercentageUsed()
+            ));
         }
         
-        if (!hasBudget) {
+        if (budgets.isEmpty()) {
             report.append("No budgets set for this month.\n");
         } else {
             report.append("-".repeat(70)).append("\n");
-            double totalDifference = totalBudget - totalActual;
+            long totalDifference = budgets.getTotalRemaining();
             String totalStatus = totalDifference >= 0 ? "Under" : "Over";
-            double totalPercentage = (totalBudget > 0) ? (totalActual / totalBudget) * 100 : 0;
             report.append(String.format("%-20s Budget: ₹%,10.2f | Actual: ₹%,10.2f | %s: ₹%,10.2f (%.1f%%)\n",
                 "TOTAL:",
-                totalBudget,
-                totalActual,
+                Money.toDecimal(budgets.getTotalBudget()),
+                Money.toDecimal(budgets.getTotalActual()),
                 totalStatus,
-                Math.abs(totalDifference),
-                totalPercentage
+                Money.toDecimal(Math.abs(totalDifference)),
+                budgets.getTotalPercentageUsed()
             ));
         }
         
@@ -151,7 +187,23 @@ public class ReportPanel extends JPanel {
         report.append("Report generated on: ").append(LocalDate.now().toString()).append("\n");
         report.append("=".repeat(70));
         
-        reportArea.setText(report.toString());
+        worker.step(100);
+        return report.toString();
+    }
+    
+    // The report's figures, read together so they agree with each other
+    private static class ReportData {
+        final long totalIncome;
+        final long totalExpenses;
+        final TransactionSummary monthly;
+        final BudgetEvaluator.Evaluation budgets;
+        
+        ReportData(TransactionStore store, int month, int year, List<Budget> budgetList) {
+            totalIncome = FinanceCalculator.calculateTotalIncome(store);
+            totalExpenses = FinanceCalculator.calculateTotalExpenses(store);
+            monthly = FinanceCalculator.summarizeMonth(store, month, year);
+            budgets = BudgetEvaluator.evaluate(budgetList, store, month, year);
+        }
     }
     
     private void exportReport() {
@@ -170,7 +222,8 @@ public class ReportPanel extends JPanel {
         int userSelection = fileChooser.showSaveDialog(this);
         if (userSelection == JFileChooser.APPROVE_OPTION) {
             java.io.File file = fileChooser.getSelectedFile();
-            try (java.io.PrintWriter writer = new java.io.PrintWriter(new java.io.FileWriter(file))) {
+            try (java.io.PrintWriter writer = new java.io.PrintWriter(
+                    new java.io.FileWriter(file, java.nio.charset.StandardCharsets.UTF_8))) {
                 writer.print(report);
                 JOptionPane.showMessageDialog(this, "Report exported successfully!", 
                     "Success", JOptionPane.INFORMATION_MESSAGE);
@@ -187,6 +240,21 @@ public class ReportPanel extends JPanel {
         return months[month];
     }
     
+    // The report opens with all-time totals, so every transaction change
+    // makes it stale; budget changes only for the month shown
+    @Override
+    public void markStale(DataChange change) {
+        if (change.getKind() == DataChange.Kind.TRANSACTIONS
+                || (change.getKind() == DataChange.Kind.BUDGETS && change.affects(shownMonth))) {
+            stale = true;
+        }
+    }
+    
+    @Override
+    public void refreshIfStale() {
+        if (stale) generateReport();
+    }
+    
     public void refresh() {
         generateReport();
     }
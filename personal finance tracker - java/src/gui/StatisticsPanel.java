@@ -3,16 +3,27 @@ package gui;
 import javax.swing.*;
 import java.awt.*;
 import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
 import models.*;
+import util.BudgetEvaluator;
 import util.FinanceCalculator;
+import util.FinanceRepository;
+import util.Money;
+import util.TransactionStore;
+import util.TransactionSummary;
 
-public class StatisticsPanel extends JPanel {
+public class StatisticsPanel extends JPanel implements ChangeAwarePanel {
     private MainFrame mainFrame;
     private JTextArea statsArea;
     private JSpinner monthSpinner;
     private JSpinner yearSpinner;
     private JButton generateButton;
     private JButton compareButton;
+    private JProgressBar progressBar;
+    private TextWorker worker;
+    private YearMonth shownMonth;
+    private boolean stale;
     
     public StatisticsPanel(MainFrame mainFrame) {
         this.mainFrame = mainFrame;
@@ -32,6 +43,13 @@ public class StatisticsPanel extends JPanel {
         compareButton = new JButton("Compare Months");
         compareButton.addActionListener(e -> compareMonths());
         controlPanel.add(compareButton);
+        progressBar = new JProgressBar(0, 100);
+        progressBar.setVisible(false);
+        controlPanel.add(progressBar);
+        
+        // Statistics still being built for the old month are no longer wanted
+        monthSpinner.addChangeListener(e -> cancelWorker());
+        yearSpinner.addChangeListener(e -> cancelWorker());
         add(controlPanel, BorderLayout.NORTH);
         
         // Create stats area
@@ -45,30 +63,66 @@ public class StatisticsPanel extends JPanel {
         generateStatistics();
     }
     
+    // Loads the months involved and snapshots what the statistics need on
+    // the event thread, then builds the text on a worker
     private void generateStatistics() {
+        // Cancel first: loading history waits for a worker still reading
+        cancelWorker();
         int month = (Integer) monthSpinner.getValue();
         int year = (Integer) yearSpinner.getValue();
+        shownMonth = YearMonth.of(year, month);
+        stale = false;
         
+        YearMonth previousMonth = shownMonth.minusMonths(1);
+        mainFrame.ensureLoaded(previousMonth);
+        // Months not loaded yet come from the partition index
+        long[] ytdHistory = mainFrame.getUnloadedTotals(YearMonth.of(year, 1), shownMonth);
+        long[] history = mainFrame.getUnloadedTotals(null, shownMonth);
+        List<Budget> budgetList = mainFrame.getBudgets();
+        start((w, repository) -> buildStatistics(w, repository, month, year, ytdHistory, history, budgetList));
+    }
+    
+    private void start(TextWorker.Builder builder) {
+        progressBar.setValue(0);
+        progressBar.setVisible(true);
+        worker = new TextWorker(mainFrame.getRepository(), statsArea, progressBar, builder);
+        worker.execute();
+    }
+    
+    private void cancelWorker() {
+        if (worker != null && !worker.isDone()) {
+            worker.cancel(true);
+            progressBar.setVisible(false);
+        }
+    }
+    
+    // Runs on the worker; only gathering the figures holds the read lock
+    private String buildStatistics(TextWorker worker, FinanceRepository repository, int month, int year,
+            long[] ytdHistory, long[] history, List<Budget> budgetList) {
+        StatisticsData data = repository.read(store -> new StatisticsData(store, month, year, budgetList));
         StringBuilder stats = new StringBuilder();
         stats.append("=".repeat(80)).append("\n");
         stats.append("FINANCIAL STATISTICS - ").append(getMonthName(month)).append(" ").append(year).append("\n");
         stats.append("=".repeat(80)).append("\n\n");
         
         // Current month statistics
-        var currentMonthTransactions = FinanceCalculator.getTransactionsForMonth(
-            mainFrame.getTransactions(), month, year);
-        double currentIncome = FinanceCalculator.calculateTotalIncome(currentMonthTransactions);
-        double currentExpenses = FinanceCalculator.calculateTotalExpenses(currentMonthTransactions);
-        double currentBalance = currentIncome - currentExpenses;
+        TransactionSummary current = data.current;
+        long currentIncome = current.getIncome();
+        long currentExpenses = current.getExpenses();
+        long currentBalance = current.getBalance();
         
         stats.append("CURRENT MONTH (").append(getMonthName(month)).append(" ").append(year).append("):\n");
         stats.append("-".repeat(80)).append("\n");
-        stats.append(String.format("Total Income:     ₹%,15.2f\n", currentIncome));
-        stats.append(String.format("Total Expenses:   ₹%,15.2f\n", currentExpenses));
-        stats.append(String.format("Net Balance:      ₹%,15.2f\n", currentBalance));
-        stats.append(String.format("Transactions:     %15d\n", currentMonthTransactions.size()));
+        stats.append(String.format("Total Income:     ₹%,15.2f\n", Money.toDecimal(currentIncome)));
+        stats.append(String.format("Total Expenses:   ₹%,15.2f\n", Money.toDecimal(currentExpenses)));
+        stats.append(String.format("Net Balance:      ₹%,15.2f\n", Money.toDecimal(currentBalance)));
+        stats.append(String.format("Transactions:     %15d\n", current.getCount()));
+        stats.append(String.format("Average Amount:   ₹%,15.2f\n", Money.toDecimal(current.getMeanAmount())));
+        stats.append(String.format("Largest Amount:   ₹%,15.2f\n", Money.toDecimal(current.getMaxAmount())));
         stats.append("\n");
         
+        worker.step(20);
+        
         // Previous month comparison
         int prevMonth = month - 1;
         int prevYear = year;
@@ -77,72 +131,71 @@ public class StatisticsPanel extends JPanel {
             prevYear--;
         }
         
-        var prevMonthTransactions = FinanceCalculator.getTransactionsForMonth(
-            mainFrame.getTransactions(), prevMonth, prevYear);
-        double prevIncome = FinanceCalculator.calculateTotalIncome(prevMonthTransactions);
-        double prevExpenses = FinanceCalculator.calculateTotalExpenses(prevMonthTransactions);
-        double prevBalance = prevIncome - prevExpenses;
+        TransactionSummary previous = data.previous;
+        long prevIncome = previous.getIncome();
+        long prevExpenses = previous.getExpenses();
+        long prevBalance = previous.getBalance();
         
         stats.append("PREVIOUS MONTH (").append(getMonthName(prevMonth)).append(" ").append(prevYear).append("):\n");
         stats.append("-".repeat(80)).append("\n");
-        stats.append(String.format("Total Income:     ₹%,15.2f\n", prevIncome));
-        stats.append(String.format("Total Expenses:   ₹%,15.2f\n", prevExpenses));
-        stats.append(String.format("Net Balance:      ₹%,15.2f\n", prevBalance));
+        stats.append(String.format("Total Income:     ₹%,15.2f\n", Money.toDecimal(prevIncome)));
+        stats.append(String.format("Total Expenses:   ₹%,15.2f\n", Money.toDecimal(prevExpenses)));
+        stats.append(String.format("Net Balance:      ₹%,15.2f\n", Money.toDecimal(prevBalance)));
         stats.append("\n");
         
         // Monthly comparison
         stats.append("MONTH-TO-MONTH COMPARISON:\n");
         stats.append("-".repeat(80)).append("\n");
-        double incomeChange = currentIncome - prevIncome;
-        double expenseChange = currentExpenses - prevExpenses;
-        double balanceChange = currentBalance - prevBalance;
+        long incomeChange = currentIncome - prevIncome;
+        long expenseChange = currentExpenses - prevExpenses;
+        long balanceChange = currentBalance - prevBalance;
         
         stats.append(String.format("Income Change:    ₹%,15.2f (%s%.1f%%)\n", 
-            incomeChange, 
+            Money.toDecimal(incomeChange), 
             incomeChange >= 0 ? "+" : "",
-            prevIncome > 0 ? (incomeChange / prevIncome * 100) : 0));
+            prevIncome > 0 ? Money.percentage(incomeChange, prevIncome) : 0));
         stats.append(String.format("Expense Change:   ₹%,15.2f (%s%.1f%%)\n", 
-            expenseChange,
+            Money.toDecimal(expenseChange),
             expenseChange >= 0 ? "+" : "",
-            prevExpenses > 0 ? (expenseChange / prevExpenses * 100) : 0));
+            prevExpenses > 0 ? Money.percentage(expenseChange, prevExpenses) : 0));
         stats.append(String.format("Balance Change:   ₹%,15.2f (%s%.1f%%)\n", 
-            balanceChange,
+            Money.toDecimal(balanceChange),
             balanceChange >= 0 ? "+" : "",
-            prevBalance != 0 ? (balanceChange / Math.abs(prevBalance) * 100) : 0));
+            Money.percentage(balanceChange, Math.abs(prevBalance))));
         stats.append("\n");
         
-        // Year-to-date statistics
-        double ytdIncome = mainFrame.getTransactions().stream()
-            .filter(t -> t.getType().equals("Income") && t.getDate().getYear() == year)
-            .mapToDouble(Transaction::getAmount)
-            .sum();
-        double ytdExpenses = mainFrame.getTransactions().stream()
-            .filter(t -> t.getType().equals("Expense") && t.getDate().getYear() == year)
-            .mapToDouble(Transaction::getAmount)
-            .sum();
-        double ytdBalance = ytdIncome - ytdExpenses;
+        worker.step(40);
         
-        stats.append("YEAR-TO-DATE (").append(year).append("):\n");
+        // Year-to-date statistics, January through the selected month
+        long ytdIncome = ytdHistory[0] + data.ytdIncome;
+        long ytdExpenses = ytdHistory[1] + data.ytdExpenses;
+        long ytdBalance = ytdIncome - ytdExpenses;
+        long closingBalance = history[0] - history[1] + data.closingBalance;
+        
+        stats.append("YEAR-TO-DATE (").append(getMonthName(1)).append(" - ").append(getMonthName(month))
+            .append(" ").append(year).append("):\n");
         stats.append("-".repeat(80)).append("\n");
-        stats.append(String.format("Total Income:     ₹%,15.2f\n", ytdIncome));
-        stats.append(String.format("Total Expenses:   ₹%,15.2f\n", ytdExpenses));
-        stats.append(String.format("Net Balance:      ₹%,15.2f\n", ytdBalance));
-        stats.append(String.format("Average Monthly:  ₹%,15.2f\n", ytdExpenses / month));
+        stats.append(String.format("Total Income:     ₹%,15.2f\n", Money.toDecimal(ytdIncome)));
+        stats.append(String.format("Total Expenses:   ₹%,15.2f\n", Money.toDecimal(ytdExpenses)));
+        stats.append(String.format("Net Balance:      ₹%,15.2f\n", Money.toDecimal(ytdBalance)));
+        stats.append(String.format("Average Monthly:  ₹%,15.2f\n", Money.toDecimal(Math.round((double) ytdExpenses / month))));
+        stats.append(String.format("Closing Balance:  ₹%,15.2f\n", Money.toDecimal(closingBalance)));
         stats.append("\n");
         
+        worker.step(60);
+        
         // Top spending categories
-        var expensesByCategory = FinanceCalculator.getExpensesByCategory(currentMonthTransactions);
+        var expensesByCategory = current.getExpensesByCategory();
         if (!expensesByCategory.isEmpty()) {
             stats.append("TOP SPENDING CATEGORIES (Current Month):\n");
             stats.append("-".repeat(80)).append("\n");
             expensesByCategory.entrySet().stream()
-                .sorted((a, b) -> Double.compare(b.getValue(), a.getValue()))
+                .sorted((a, b) -> Long.compare(b.getValue(), a.getValue()))
                 .limit(5)
                 .forEach(entry -> {
-                    double percentage = (currentExpenses > 0) ? 
-                        (entry.getValue() / currentExpenses) * 100 : 0;
+                    double percentage = Money.percentage(entry.getValue(), currentExpenses);
                     stats.append(String.format("%-25s ₹%,12.2f  (%.1f%%)\n", 
-                        entry.getKey() + ":", entry.getValue(), percentage));
+                        entry.getKey() + ":", Money.toDecimal(entry.getValue()), percentage));
                 });
             stats.append("\n");
         }
@@ -150,26 +203,21 @@ public class StatisticsPanel extends JPanel {
         // Budget status
         stats.append("BUDGET STATUS:\n");
         stats.append("-".repeat(80)).append("\n");
-        boolean hasBudget = false;
-        for (Budget budget : mainFrame.getBudgets()) {
-            if (budget.getMonth() == month && budget.getYear() == year) {
-                hasBudget = true;
-                double actual = FinanceCalculator.getCategoryExpenseForMonth(
-                    mainFrame.getTransactions(), budget.getCategory(), month, year);
-                double budgetAmount = budget.getAmount();
-                double percentage = (budgetAmount > 0) ? (actual / budgetAmount) * 100 : 0;
-                String status = percentage <= 100 ? "✓ On Track" : "⚠ Over Budget";
-                
-                stats.append(String.format("%-20s Budget: ₹%,10.2f | Spent: ₹%,10.2f | %s (%.1f%%)\n",
-                    budget.getCategory() + ":",
-                    budgetAmount,
-                    actual,
-                    status,
-                    percentage
-                ));
-            }
+        worker.step(80);
+        BudgetEvaluator.Evaluation budgets = data.budgets;
+        for (BudgetEvaluator.BudgetStatus budgetStatus : budgets.getStatuses()) {
+            double percentage = budgetStatus.getPercentageUsed();
+            String status = percentage <= 100 ? "✓ On Track" : "⚠ Over Budget";
+            
+            stats.append(String.format("%-20s Budget: ₹%,10.2f | Spent: ₹%,10.2f | %s (%.1f%%)\n",
+                budgetStatus.getBudget().getCategory() + ":",
+                Money.toDecimal(budgetStatus.getBudget().getAmount()),
+                Money.toDecimal(budgetStatus.getActual()),
+                status,
+                percentage
+            ));
         }
-        if (!hasBudget) {
+        if (budgets.isEmpty()) {
             stats.append("No budgets set for this month.\n");
         }
         
@@ -178,10 +226,12 @@ public class StatisticsPanel extends JPanel {
         stats.append("Generated on: ").append(LocalDate.now().toString()).append("\n");
         stats.append("=".repeat(80));
         
-        statsArea.setText(stats.toString());
+        worker.step(100);
+        return stats.toString();
     }
     
     private void compareMonths() {
+        cancelWorker();
         int month1 = (Integer) monthSpinner.getValue();
         int year1 = (Integer) yearSpinner.getValue();
         
@@ -192,58 +242,94 @@ public class StatisticsPanel extends JPanel {
             month2 = 12;
             year2--;
         }
-        
+        mainFrame.ensureLoaded(YearMonth.of(year2, month2));
+        int previousMonth = month2;
+        int previousYear = year2;
+        start((w, repository) -> buildComparison(w, repository, month1, year1, previousMonth, previousYear));
+    }
+    
+    // Runs on the worker; only reading the two summaries holds the read lock
+    private String buildComparison(TextWorker worker, FinanceRepository repository,
+            int month1, int year1, int month2, int year2) {
+        TransactionSummary[] summaries = repository.read(store -> new TransactionSummary[] {
+            FinanceCalculator.summarizeMonth(store, month1, year1),
+            FinanceCalculator.summarizeMonth(store, month2, year2)
+        });
         StringBuilder comparison = new StringBuilder();
         comparison.append("=".repeat(80)).append("\n");
         comparison.append("MONTH COMPARISON\n");
         comparison.append("=".repeat(80)).append("\n\n");
         
         // Month 1
-        var month1Transactions = FinanceCalculator.getTransactionsForMonth(
-            mainFrame.getTransactions(), month1, year1);
-        double month1Income = FinanceCalculator.calculateTotalIncome(month1Transactions);
-        double month1Expenses = FinanceCalculator.calculateTotalExpenses(month1Transactions);
-        double month1Balance = month1Income - month1Expenses;
+        TransactionSummary summary1 = summaries[0];
+        long month1Income = summary1.getIncome();
+        long month1Expenses = summary1.getExpenses();
+        long month1Balance = summary1.getBalance();
         
         // Month 2
-        var month2Transactions = FinanceCalculator.getTransactionsForMonth(
-            mainFrame.getTransactions(), month2, year2);
-        double month2Income = FinanceCalculator.calculateTotalIncome(month2Transactions);
-        double month2Expenses = FinanceCalculator.calculateTotalExpenses(month2Transactions);
-        double month2Balance = month2Income - month2Expenses;
+        TransactionSummary summary2 = summaries[1];
+        long month2Income = summary2.getIncome();
+        long month2Expenses = summary2.getExpenses();
+        long month2Balance = summary2.getBalance();
         
         comparison.append(String.format("%-40s %-40s\n", 
             getMonthName(month1) + " " + year1, getMonthName(month2) + " " + year2));
         comparison.append("-".repeat(80)).append("\n");
         comparison.append(String.format("%-40s %-40s\n", 
-            String.format("Income: ₹%,.2f", month1Income),
-            String.format("Income: ₹%,.2f", month2Income)));
+            String.format("Income: ₹%,.2f", Money.toDecimal(month1Income)),
+            String.format("Income: ₹%,.2f", Money.toDecimal(month2Income))));
         comparison.append(String.format("%-40s %-40s\n", 
-            String.format("Expenses: ₹%,.2f", month1Expenses),
-            String.format("Expenses: ₹%,.2f", month2Expenses)));
+            String.format("Expenses: ₹%,.2f", Money.toDecimal(month1Expenses)),
+            String.format("Expenses: ₹%,.2f", Money.toDecimal(month2Expenses))));
         comparison.append(String.format("%-40s %-40s\n", 
-            String.format("Balance: ₹%,.2f", month1Balance),
-            String.format("Balance: ₹%,.2f", month2Balance)));
+            String.format("Balance: ₹%,.2f", Money.toDecimal(month1Balance)),
+            String.format("Balance: ₹%,.2f", Money.toDecimal(month2Balance))));
         comparison.append("\n");
         
+        worker.step(50);
+        
         // Differences
-        double incomeDiff = month1Income - month2Income;
-        double expenseDiff = month1Expenses - month2Expenses;
-        double balanceDiff = month1Balance - month2Balance;
+        long incomeDiff = month1Income - month2Income;
+        long expenseDiff = month1Expenses - month2Expenses;
+        long balanceDiff = month1Balance - month2Balance;
         
         comparison.append("DIFFERENCES:\n");
         comparison.append("-".repeat(80)).append("\n");
         comparison.append(String.format("Income:   ₹%,.2f (%s%.1f%%)\n", 
-            incomeDiff, incomeDiff >= 0 ? "+" : "",
-            month2Income > 0 ? (incomeDiff / month2Income * 100) : 0));
+            Money.toDecimal(incomeDiff), incomeDiff >= 0 ? "+" : "",
+            month2Income > 0 ? Money.percentage(incomeDiff, month2Income) : 0));
         comparison.append(String.format("Expenses: ₹%,.2f (%s%.1f%%)\n", 
-            expenseDiff, expenseDiff >= 0 ? "+" : "",
-            month2Expenses > 0 ? (expenseDiff / month2Expenses * 100) : 0));
+            Money.toDecimal(expenseDiff), expenseDiff >= 0 ? "+" : "",
+            month2Expenses > 0 ? Money.percentage(expenseDiff, month2Expenses) : 0));
         comparison.append(String.format("Balance:  ₹%,.2f (%s%.1f%%)\n", 
-            balanceDiff, balanceDiff >= 0 ? "+" : "",
-            month2Balance != 0 ? (balanceDiff / Math.abs(month2Balance) * 100) : 0));
+            Money.toDecimal(balanceDiff), balanceDiff >= 0 ? "+" : "",
+            Money.percentage(balanceDiff, Math.abs(month2Balance))));
+        
+        worker.step(100);
+        return comparison.toString();
+    }
+    
+    // The statistics' figures, read together so they agree with each other
+    private static class StatisticsData {
+        final TransactionSummary current;
+        final TransactionSummary previous;
+        final long ytdIncome;
+        final long ytdExpenses;
+        final long closingBalance;
+        final BudgetEvaluator.Evaluation budgets;
         
-        statsArea.setText(comparison.toString());
+        StatisticsData(TransactionStore store, int month, int year, List<Budget> budgetList) {
+            YearMonth shown = YearMonth.of(year, month);
+            YearMonth before = shown.minusMonths(1);
+            LocalDate yearStart = LocalDate.of(year, 1, 1);
+            LocalDate monthEnd = shown.atEndOfMonth();
+            current = FinanceCalculator.summarizeMonth(store, month, year);
+            previous = FinanceCalculator.summarizeMonth(store, before.getMonthValue(), before.getYear());
+            ytdIncome = FinanceCalculator.calculateIncomeBetween(store, yearStart, monthEnd);
+            ytdExpenses = FinanceCalculator.calculateExpensesBetween(store, yearStart, monthEnd);
+            closingBalance = FinanceCalculator.calculateBalanceAsOf(store, monthEnd);
+            budgets = BudgetEvaluator.evaluate(budgetList, store, month, year);
+        }
     }
     
     private String getMonthName(int month) {
@@ -252,6 +338,22 @@ public class StatisticsPanel extends JPanel {
         return months[month];
     }
     
+    // Everything shown depends only on the selected month and earlier
+    // ones: the month itself, the one before, year-to-date and the
+    // closing balance
+    @Override
+    public void markStale(DataChange change) {
+        if ((change.getKind() == DataChange.Kind.TRANSACTIONS && change.affectsUpTo(shownMonth))
+                || (change.getKind() == DataChange.Kind.BUDGETS && change.affects(shownMonth))) {
+            stale = true;
+        }
+    }
+    
+    @Override
+    public void refreshIfStale() {
+        if (stale) generateStatistics();
+    }
+    
     public void refresh() {
         generateStatistics();
     }
@@ -0,0 +1,59 @@
+package gui;
+
+import javax.swing.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import util.FinanceRepository;
+
+// Builds a report's text off the event thread, reporting progress to a
+// bar, then swaps the result into the text area with a single setText.
+// The builder takes what it needs from the repository in one short read
+// and formats it with the lock released, so changes made meanwhile on the
+// event thread never wait for the formatting. A cancelled worker stops at
+// its next step and its result is dropped.
+public class TextWorker extends SwingWorker<String, Void> {
+    public interface Builder {
+        String build(TextWorker worker, FinanceRepository repository);
+    }
+    
+    private final FinanceRepository repository;
+    private final JTextArea target;
+    private final JProgressBar progressBar;
+    private final Builder builder;
+    
+    public TextWorker(FinanceRepository repository, JTextArea target, JProgressBar progressBar, Builder builder) {
+        this.repository = repository;
+        this.target = target;
+        this.progressBar = progressBar;
+        this.builder = builder;
+        addPropertyChangeListener(e -> {
+            if ("progress".equals(e.getPropertyName())) progressBar.setValue((Integer) e.getNewValue());
+        });
+    }
+    
+    // Called by the builder between sections
+    public void step(int percent) {
+        if (isCancelled()) throw new CancellationException();
+        setProgress(percent);
+    }
+    
+    @Override
+    protected String doInBackground() {
+        return builder.build(this, repository);
+    }
+    
+    @Override
+    protected void done() {
+        // Whoever cancelled has already moved on, possibly to a new worker
+        if (isCancelled()) return;
+        progressBar.setVisible(false);
+        try {
+            target.setText(get());
+            target.setCaretPosition(0);
+        } catch (InterruptedException | ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            System.err.println("Error generating report: " + cause);
+            target.setText("Error generating report: " + cause.getMessage());
+        }
+    }
+}
@@ -1,22 +1,32 @@
 package gui;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.table.TableRowSorter;
 import java.awt.*;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.BitSet;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import models.*;
+import util.FinanceRepository;
+import util.Money;
+import util.TransactionQuery;
 
-public class TransactionPanel extends JPanel {
+public class TransactionPanel extends JPanel implements ChangeAwarePanel {
     private MainFrame mainFrame;
     private JTable transactionTable;
-    private DefaultTableModel tableModel;
-    private TableRowSorter<DefaultTableModel> sorter;
-    private JComboBox<String> typeCombo;
+    private TransactionTableModel tableModel;
+    private TableRowSorter<TransactionTableModel> sorter;
+    private JComboBox<TransactionType> typeCombo;
     private JTextField amountField;
     private JComboBox<String> categoryCombo;
     private JTextField descriptionField;
@@ -35,6 +45,21 @@ public class TransactionPanel extends JPanel {
     private JButton clearFilterButton;
     private JButton exportCSVButton;
     private JLabel statusLabel;
+    private boolean tableStale;
+    private boolean categoriesStale;
+    
+    // Live filtering: keystrokes restart the timer, which starts a filter
+    // on the executor once typing pauses
+    private static final int FILTER_DELAY_MS = 250;
+    private final ExecutorService filterExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "transaction-filter");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Timer filterTimer;
+    private Future<?> pendingFilter;
+    // Bumped on the event thread by every new filter or refresh
+    private volatile int filterGeneration;
     
     public TransactionPanel(MainFrame mainFrame) {
         this.mainFrame = mainFrame;
@@ -51,13 +76,7 @@ public class TransactionPanel extends JPanel {
         add(formContainer, BorderLayout.WEST);
         
         // Create table
-        String[] columns = {"ID", "Type", "Amount", "Category", "Description", "Date"};
-        tableModel = new DefaultTableModel(columns, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
+        tableModel = new TransactionTableModel(mainFrame.getRepository(), mainFrame::getUnloadedBalance);
         transactionTable = new JTable(tableModel);
         sorter = new TableRowSorter<>(tableModel);
         transactionTable.setRowSorter(sorter);
@@ -65,15 +84,22 @@ public class TransactionPanel extends JPanel {
         transactionTable.setRowHeight(25);
         transactionTable.setAutoCreateRowSorter(true);
         
-        // Color coding for income (green) and expenses (red)
-        transactionTable.setDefaultRenderer(Object.class, new javax.swing.table.DefaultTableCellRenderer() {
+        // Color coding for income (green) and expenses (red); amounts are
+        // formatted here, so only painted cells are formatted
+        javax.swing.table.DefaultTableCellRenderer renderer = new javax.swing.table.DefaultTableCellRenderer() {
             @Override
             public Component getTableCellRendererComponent(JTable table, Object value,
                     boolean isSelected, boolean hasFocus, int row, int column) {
+                int modelColumn = table.convertColumnIndexToModel(column);
+                if (value instanceof Long && (modelColumn == TransactionTableModel.AMOUNT
+                        || modelColumn == TransactionTableModel.BALANCE)) {
+                    value = String.format("₹%.2f", Money.toDecimal((Long) value));
+                }
                 Component c = super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
+                setHorizontalAlignment(SwingConstants.LEADING);
                 if (!isSelected) {
                     int modelRow = table.convertRowIndexToModel(row);
-                    String type = (String) tableModel.getValueAt(modelRow, 1);
+                    String type = (String) tableModel.getValueAt(modelRow, TransactionTableModel.TYPE);
                     if ("Income".equals(type)) {
                         c.setBackground(new Color(200, 255, 200)); // Light green
                     } else if ("Expense".equals(type)) {
@@ -84,7 +110,9 @@ public class TransactionPanel extends JPanel {
                 }
                 return c;
             }
-        });
+        };
+        transactionTable.setDefaultRenderer(Object.class, renderer);
+        transactionTable.setDefaultRenderer(Number.class, renderer);
         
         JScrollPane scrollPane = new JScrollPane(transactionTable);
         add(scrollPane, BorderLayout.CENTER);
@@ -178,6 +206,29 @@ public class TransactionPanel extends JPanel {
         // Update category filter when categories change
         updateFilterCategoryCombo();
         
+        // Filter as the user types
+        filterTimer = new Timer(FILTER_DELAY_MS, e -> applyFilters());
+        filterTimer.setRepeats(false);
+        DocumentListener typing = new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                scheduleFilter();
+            }
+            
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                scheduleFilter();
+            }
+            
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                scheduleFilter();
+            }
+        };
+        searchField.getDocument().addDocumentListener(typing);
+        dateFromField.getDocument().addDocumentListener(typing);
+        dateToField.getDocument().addDocumentListener(typing);
+        
         return panel;
     }
     
@@ -192,7 +243,7 @@ public class TransactionPanel extends JPanel {
         gbc.gridx = 0; gbc.gridy = 0;
         panel.add(new JLabel("Type:"), gbc);
         gbc.gridx = 1;
-        typeCombo = new JComboBox<>(new String[]{"Income", "Expense"});
+        typeCombo = new JComboBox<>(TransactionType.values());
         panel.add(typeCombo, gbc);
         
         // Amount
@@ -231,14 +282,15 @@ public class TransactionPanel extends JPanel {
     }
     
     private void updateCategoryCombo() {
-        String selectedType = (String) typeCombo.getSelectedItem();
+        TransactionType selectedType = (TransactionType) typeCombo.getSelectedItem();
         categoryCombo.removeAllItems();
         mainFrame.getCategories().stream()
-            .filter(c -> c.getType().equals(selectedType))
+            .filter(c -> c.getType() == selectedType)
             .forEach(c -> categoryCombo.addItem(c.getName()));
     }
     
     private void updateFilterCategoryCombo() {
+        categoriesStale = false;
         filterCategoryCombo.removeAllItems();
         filterCategoryCombo.addItem("All");
         mainFrame.getCategories().stream()
@@ -248,57 +300,89 @@ public class TransactionPanel extends JPanel {
             .forEach(filterCategoryCombo::addItem);
     }
     
+    // Re-runs the filter once typing pauses
+    private void scheduleFilter() {
+        filterTimer.restart();
+    }
+    
+    // Reads the criteria, has any history they need read from disk in the
+    // background, then filters on the background executor. A newer request
+    // bumps the generation, which makes older ones stop and drop their
+    // results.
     private void applyFilters() {
-        String searchText = searchField.getText().toLowerCase().trim();
-        String filterType = (String) filterTypeCombo.getSelectedItem();
-        String filterCategory = (String) filterCategoryCombo.getSelectedItem();
-        String dateFrom = dateFromField.getText().trim();
-        String dateTo = dateToField.getText().trim();
-        
-        List<Transaction> filtered = mainFrame.getTransactions().stream()
-            .filter(t -> {
-                // Search filter
-                if (!searchText.isEmpty()) {
-                    boolean matchesSearch = t.getDescription().toLowerCase().contains(searchText) ||
-                                         t.getCategory().toLowerCase().contains(searchText);
-                    if (!matchesSearch) return false;
-                }
-                
-                // Type filter
-                if (!"All".equals(filterType)) {
-                    if (!t.getType().equals(filterType)) return false;
-                }
-                
-                // Category filter
-                if (!"All".equals(filterCategory)) {
-                    if (!t.getCategory().equals(filterCategory)) return false;
-                }
-                
-                // Date range filter
-                if (!dateFrom.isEmpty()) {
-                    try {
-                        LocalDate fromDate = LocalDate.parse(dateFrom);
-                        if (t.getDate().isBefore(fromDate)) return false;
-                    } catch (Exception e) {
-                        // Invalid date format, ignore filter
-                    }
-                }
-                
-                if (!dateTo.isEmpty()) {
-                    try {
-                        LocalDate toDate = LocalDate.parse(dateTo);
-                        if (t.getDate().isAfter(toDate)) return false;
-                    } catch (Exception e) {
-                        // Invalid date format, ignore filter
-                    }
-                }
-                
-                return true;
-            })
-            .collect(Collectors.toList());
+        filterTimer.stop();
+        String typeSelection = (String) filterTypeCombo.getSelectedItem();
+        String categorySelection = (String) filterCategoryCombo.getSelectedItem();
+        TransactionQuery query = new TransactionQuery();
+        query.setText(searchField.getText());
+        if (typeSelection != null && !"All".equals(typeSelection)) {
+            query.setType(TransactionType.fromLabel(typeSelection));
+        }
+        if (categorySelection != null && !"All".equals(categorySelection)) {
+            query.addCategory(categorySelection);
+        }
+        
+        // Cancel first: loading history waits for a filter still reading
+        int generation = ++filterGeneration;
+        if (pendingFilter != null) pendingFilter.cancel(true);
+        
+        TransactionQuery.Plan plan;
+        try {
+            // A date still being typed leaves the listing as it is rather
+            // than opening the range and reading all history
+            query.setFrom(parseFilterDate("Date From", dateFromField.getText().trim()));
+            query.setTo(parseFilterDate("Date To", dateToField.getText().trim()));
+            plan = query.compile();
+        } catch (IllegalArgumentException e) {
+            statusLabel.setText("Invalid filter: " + e.getMessage());
+            return;
+        }
         
-        displayTransactions(filtered);
-        statusLabel.setText("Filtered: " + filtered.size() + " / Total: " + mainFrame.getTransactions().size());
+        // Older history is only read from disk when the filter reaches back
+        // to it, and never on the event thread
+        YearMonth needed = query.getFrom() == null ? null : YearMonth.from(query.getFrom());
+        if (!mainFrame.isLoaded(needed)) statusLabel.setText("Loading history...");
+        mainFrame.loadInBackground(needed, () -> {
+            if (generation != filterGeneration) return;
+            // The load marks a full listing stale, but this filter's result replaces it
+            tableStale = false;
+            runFilter(plan, generation);
+        });
+    }
+    
+    private void runFilter(TransactionQuery.Plan plan, int generation) {
+        FinanceRepository repository = mainFrame.getRepository();
+        pendingFilter = filterExecutor.submit(() -> {
+            // Row numbers are only meaningful while changes are kept out, so
+            // the table gets the matches by id, which survives renumbering
+            int[] ids = repository.read(store -> {
+                BitSet matches = plan.execute(store);
+                if (generation != filterGeneration) return null;
+                int[] matched = new int[matches.cardinality()];
+                int i = 0;
+                for (int row = matches.nextSetBit(0); row >= 0; row = matches.nextSetBit(row + 1)) {
+                    matched[i++] = store.getId(row);
+                }
+                return matched;
+            });
+            if (ids == null) return;
+            int total = repository.transactionCount();
+            SwingUtilities.invokeLater(() -> {
+                if (generation != filterGeneration) return;
+                tableModel.showIds(ids);
+                statusLabel.setText("Filtered: " + ids.length + " / Total: " + total);
+            });
+        });
+    }
+    
+    // Null for an empty date, which leaves that end of the range open
+    private LocalDate parseFilterDate(String field, String text) {
+        if (text.isEmpty()) return null;
+        try {
+            return LocalDate.parse(text);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException(field + " is not a date (YYYY-MM-DD)");
+        }
     }
     
     private void clearFilters() {
@@ -312,14 +396,14 @@ public class TransactionPanel extends JPanel {
     
     private void addTransaction() {
         try {
-            String type = (String) typeCombo.getSelectedItem();
+            TransactionType type = (TransactionType) typeCombo.getSelectedItem();
             String amountText = amountField.getText().trim();
             if (amountText.isEmpty()) {
                 JOptionPane.showMessageDialog(this, "Please enter an amount", 
                     "Validation Error", JOptionPane.WARNING_MESSAGE);
                 return;
             }
-            double amount = Double.parseDouble(amountText);
+            long amount = Money.parse(amountText);
             if (amount <= 0) {
                 JOptionPane.showMessageDialog(this, "Amount must be greater than zero", 
                     "Validation Error", JOptionPane.WARNING_MESSAGE);
@@ -366,31 +450,27 @@ public class TransactionPanel extends JPanel {
         }
         
         int modelRow = transactionTable.convertRowIndexToModel(selectedRow);
-        int id = (Integer) tableModel.getValueAt(modelRow, 0);
-        Transaction oldTransaction = mainFrame.getTransactions().stream()
-            .filter(t -> t.getId() == id)
-            .findFirst()
-            .orElse(null);
+        Transaction oldTransaction = tableModel.getTransaction(modelRow);
         
         if (oldTransaction == null) return;
         
         // Populate form with selected transaction
         typeCombo.setSelectedItem(oldTransaction.getType());
-        amountField.setText(String.valueOf(oldTransaction.getAmount()));
+        amountField.setText(Money.toPlainString(oldTransaction.getAmount()));
         descriptionField.setText(oldTransaction.getDescription());
         dateField.setText(oldTransaction.getDate().format(DateTimeFormatter.ISO_DATE));
         updateCategoryCombo();
         categoryCombo.setSelectedItem(oldTransaction.getCategory());
         
         try {
-            String type = (String) typeCombo.getSelectedItem();
+            TransactionType type = (TransactionType) typeCombo.getSelectedItem();
             String amountText = amountField.getText().trim();
             if (amountText.isEmpty()) {
                 JOptionPane.showMessageDialog(this, "Please enter an amount", 
                     "Validation Error", JOptionPane.WARNING_MESSAGE);
                 return;
             }
-            double amount = Double.parseDouble(amountText);
+            long amount = Money.parse(amountText);
             if (amount <= 0) {
                 JOptionPane.showMessageDialog(this, "Amount must be greater than zero", 
                     "Validation Error", JOptionPane.WARNING_MESSAGE);
@@ -438,11 +518,7 @@ public class TransactionPanel extends JPanel {
         }
         
         int modelRow = transactionTable.convertRowIndexToModel(selectedRow);
-        int id = (Integer) tableModel.getValueAt(modelRow, 0);
-        Transaction transaction = mainFrame.getTransactions().stream()
-            .filter(t -> t.getId() == id)
-            .findFirst()
-            .orElse(null);
+        Transaction transaction = tableModel.getTransaction(modelRow);
         
         if (transaction != null) {
             int confirm = JOptionPane.showConfirmDialog(this, 
@@ -465,20 +541,21 @@ public class TransactionPanel extends JPanel {
         int userSelection = fileChooser.showSaveDialog(this);
         if (userSelection == JFileChooser.APPROVE_OPTION) {
             File file = fileChooser.getSelectedFile();
-            try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
+            try (PrintWriter writer = new PrintWriter(new FileWriter(file, StandardCharsets.UTF_8))) {
                 // Write header
                 writer.println("ID,Type,Amount,Category,Description,Date");
                 
                 // Write data
                 for (int i = 0; i < tableModel.getRowCount(); i++) {
-                    int modelRow = transactionTable.convertRowIndexToModel(i);
+                    Transaction t = tableModel.getTransaction(transactionTable.convertRowIndexToModel(i));
+                    if (t == null) continue;
                     writer.println(String.format("%d,%s,%s,%s,\"%s\",%s",
-                        tableModel.getValueAt(modelRow, 0),
-                        tableModel.getValueAt(modelRow, 1),
-                        tableModel.getValueAt(modelRow, 2).toString().replace("₹", "").replace(",", ""),
-                        tableModel.getValueAt(modelRow, 3),
-                        tableModel.getValueAt(modelRow, 4),
-                        tableModel.getValueAt(modelRow, 5)
+                        t.getId(),
+                        t.getType().getLabel(),
+                        Money.toPlainString(t.getAmount()),
+                        t.getCategory(),
+                        t.getDescription(),
+                        t.getDate().format(DateTimeFormatter.ISO_LOCAL_DATE)
                     ));
                 }
                 
@@ -492,24 +569,43 @@ public class TransactionPanel extends JPanel {
         }
     }
     
-    private void displayTransactions(List<Transaction> transactions) {
-        tableModel.setRowCount(0);
-        for (Transaction t : transactions) {
-            tableModel.addRow(new Object[]{
-                t.getId(),
-                t.getType(),
-                String.format("₹%.2f", t.getAmount()),
-                t.getCategory(),
-                t.getDescription(),
-                t.getDate().format(DateTimeFormatter.ofPattern("yyyy-MM-dd"))
-            });
+    @Override
+    public void markStale(DataChange change) {
+        if (change.getKind() == DataChange.Kind.TRANSACTIONS) tableStale = true;
+        // Loaded history adds rows to a full listing and to the status counts;
+        // a filtered listing already covers the range it asked for
+        if (change.getKind() == DataChange.Kind.HISTORY && tableModel.isShowingAll()) tableStale = true;
+        if (change.getKind() == DataChange.Kind.CATEGORIES) categoriesStale = true;
+    }
+    
+    @Override
+    public void refreshIfStale() {
+        if (tableStale) refreshTable();
+        if (categoriesStale) {
+            updateCategoryCombo();
+            updateFilterCategoryCombo();
         }
     }
     
     public void refresh() {
-        displayTransactions(mainFrame.getTransactions());
+        refreshTable();
         updateCategoryCombo();
         updateFilterCategoryCombo();
-        statusLabel.setText("Total Transactions: " + mainFrame.getTransactions().size());
+    }
+    
+    private void refreshTable() {
+        tableStale = false;
+        // A filter still running would overwrite the full listing
+        filterTimer.stop();
+        filterGeneration++;
+        tableModel.showAll();
+        int loaded = mainFrame.getRepository().transactionCount();
+        if (mainFrame.isAllLoaded()) {
+            statusLabel.setText("Total Transactions: " + loaded);
+        } else {
+            statusLabel.setText("Showing: " + loaded + " since "
+                + mainFrame.getLoadedFrom() + " / Total: "
+                + (loaded + mainFrame.getUnloadedCount()));
+        }
     }
 }
@@ -0,0 +1,134 @@
+package gui;
+
+import javax.swing.table.AbstractTableModel;
+import java.time.LocalDate;
+import java.util.function.LongSupplier;
+import models.Transaction;
+import util.FinanceRepository;
+import util.TransactionStore;
+
+// Table model that reads transactions straight from the store instead of
+// copying every row into the table. Each refresh takes the listed ids
+// (every live row, or a filter's matches) as one int array, read under
+// the repository's read lock, and fires a single change event. Cells read
+// one column of the id's row, optimistically except for the balance, so
+// neither painting nor sorting builds Transaction objects. Cells hold raw values (paise,
+// dates) so sorting compares numbers and dates; the panel's renderer
+// formats only the cells being painted.
+public class TransactionTableModel extends AbstractTableModel {
+    public static final int ID = 0;
+    public static final int TYPE = 1;
+    public static final int AMOUNT = 2;
+    public static final int CATEGORY = 3;
+    public static final int DESCRIPTION = 4;
+    public static final int DATE = 5;
+    public static final int BALANCE = 6;
+    
+    private static final String[] COLUMNS = {"ID", "Type", "Amount", "Category", "Description", "Date", "Balance"};
+    private static final Class<?>[] COLUMN_CLASSES = {
+        Integer.class, String.class, Long.class, String.class, String.class, LocalDate.class, Long.class
+    };
+    
+    private final FinanceRepository repository;
+    // Ids of the listed rows; unlike row numbers they stay valid when rows
+    // are renumbered by loading history or compaction
+    private int[] ids = new int[0];
+    private boolean showingAll;
+    // Balance of history still on disk, older than every loaded row. Read
+    // per cell, since loading history moves it into the balance index.
+    private final LongSupplier openingBalance;
+    
+    // The table asks for a row's cells one after another
+    private int cachedIndex = -1;
+    private Transaction cached;
+    
+    public TransactionTableModel(FinanceRepository repository, LongSupplier openingBalance) {
+        this.repository = repository;
+        this.openingBalance = openingBalance;
+    }
+    
+    public void showAll() {
+        this.ids = repository.read(TransactionStore::liveIds);
+        this.showingAll = true;
+        cachedIndex = -1;
+        fireTableDataChanged();
+    }
+    
+    public void showIds(int[] ids) {
+        this.ids = ids;
+        this.showingAll = false;
+        cachedIndex = -1;
+        fireTableDataChanged();
+    }
+    
+    // True when every loaded row is listed, so rows added to the store
+    // change the listing
+    public boolean isShowingAll() {
+        return showingAll;
+    }
+    
+    @Override
+    public int getRowCount() {
+        return ids.length;
+    }
+    
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+    
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+    
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return COLUMN_CLASSES[column];
+    }
+    
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        return false;
+    }
+    
+    // Null when the row's transaction has since been deleted
+    public Transaction getTransaction(int row) {
+        if (row != cachedIndex) {
+            int id = ids[row];
+            cached = repository.readOptimistic(store -> store.findById(id));
+            cachedIndex = row;
+        }
+        return cached;
+    }
+    
+    // Null when the row's transaction has since been deleted
+    @Override
+    public Object getValueAt(int row, int column) {
+        int id = ids[row];
+        if (column == ID) return id;
+        if (column == BALANCE) {
+            // The store keeps the balances it computes, so this one is not optimistic
+            Long running = repository.read(store -> {
+                int storeRow = store.rowOfId(id);
+                return storeRow < 0 ? null : store.runningBalanceAt(storeRow);
+            });
+            return running == null ? null : openingBalance.getAsLong() + running;
+        }
+        return repository.readOptimistic(store -> {
+            int storeRow = store.rowOfId(id);
+            return storeRow < 0 ? null : cell(store, storeRow, column);
+        });
+    }
+    
+    private static Object cell(TransactionStore store, int row, int column) {
+        switch (column) {
+            case TYPE: return store.getType(row).getLabel();
+            case AMOUNT: return store.getAmount(row);
+            case CATEGORY: return store.getCategory(row);
+            case DESCRIPTION: return store.getDescription(row);
+            case DATE: return LocalDate.ofEpochDay(store.getEpochDay(row));
+            default: return null;
+        }
+    }
+}
@@ -1,23 +1,25 @@
 package models;
 
 public class Budget {
-    private String category;
-    private double amount;
+    private int categoryId; // see CategoryRegistry
+    private long amount; // in paise
     private int month;
     private int year;
     
-    public Budget(String category, double amount, int month, int year) {
-        this.category = category;
+    public Budget(String category, long amount, int month, int year) {
+        this.categoryId = CategoryRegistry.idOf(category);
         this.amount = amount;
         this.month = month;
         this.year = year;
     }
     
-    public String getCategory() { return category; }
-    public void setCategory(String category) { this.category = category; }
+    public String getCategory() { return CategoryRegistry.nameOf(categoryId); }
+    public void setCategory(String category) { this.categoryId = CategoryRegistry.idOf(category); }
     
-    public double getAmount() { return amount; }
-    public void setAmount(double amount) { this.amount = amount; }
+    public int getCategoryId() { return categoryId; }
+    
+    public long getAmount() { return amount; }
+    public void setAmount(long amount) { this.amount = amount; }
     
     public int getMonth() { return month; }
     public void setMonth(int month) { this.month = month; }
@@ -30,14 +32,14 @@ public class Budget {
         if (this == obj) return true;
         if (obj == null || getClass() != obj.getClass()) return false;
         Budget budget = (Budget) obj;
-        return category.equals(budget.category) && 
+        return categoryId == budget.categoryId && 
                month == budget.month && 
                year == budget.year;
     }
     
     @Override
     public int hashCode() {
-        return category.hashCode() + month * 31 + year * 365;
+        return categoryId * 7919 + month * 31 + year * 365;
     }
 }
 
@@ -1,31 +1,33 @@
 package models;
 
 public class Category {
-    private String name;
-    private String type; // "Income" or "Expense"
+    private int id; // see CategoryRegistry
+    private TransactionType type;
     
-    public Category(String name, String type) {
-        this.name = name;
+    public Category(String name, TransactionType type) {
+        this.id = CategoryRegistry.idOf(name);
         this.type = type;
     }
     
-    public String getName() { return name; }
-    public void setName(String name) { this.name = name; }
+    public int getId() { return id; }
     
-    public String getType() { return type; }
-    public void setType(String type) { this.type = type; }
+    public String getName() { return CategoryRegistry.nameOf(id); }
+    public void setName(String name) { this.id = CategoryRegistry.idOf(name); }
+    
+    public TransactionType getType() { return type; }
+    public void setType(TransactionType type) { this.type = type; }
     
     @Override
     public boolean equals(Object obj) {
         if (this == obj) return true;
         if (obj == null || getClass() != obj.getClass()) return false;
         Category category = (Category) obj;
-        return name.equals(category.name) && type.equals(category.type);
+        return id == category.id && type == category.type;
     }
     
     @Override
     public int hashCode() {
-        return name.hashCode() + type.hashCode();
+        return id * 31 + type.hashCode();
     }
 }
 
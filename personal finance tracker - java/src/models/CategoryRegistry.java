@@ -0,0 +1,46 @@
+package models;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Interns category names to small int ids shared by every Transaction,
+// Budget and Category. Each distinct name is stored once and comparisons
+// between categories become int compares. Ids are never reused.
+public class CategoryRegistry {
+    private static final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private static volatile String[] names = new String[64];
+    private static int count;
+    
+    // Returns the id for the name, registering it on first use
+    public static int idOf(String name) {
+        Integer id = ids.get(name);
+        if (id != null) return id;
+        synchronized (CategoryRegistry.class) {
+            id = ids.get(name);
+            if (id != null) return id;
+            String[] current = names;
+            if (count == current.length) {
+                current = Arrays.copyOf(current, count * 2);
+            }
+            current[count] = name;
+            names = current;
+            ids.put(name, count);
+            return count++;
+        }
+    }
+    
+    // Id of an already registered name, or -1 if no category has used it
+    public static int find(String name) {
+        Integer id = ids.get(name);
+        return id == null ? -1 : id;
+    }
+    
+    public static String nameOf(int id) {
+        return names[id];
+    }
+    
+    public static int size() {
+        return ids.size();
+    }
+}
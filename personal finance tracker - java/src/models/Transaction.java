@@ -1,49 +1,54 @@
 package models;
 
+import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 
 public class Transaction {
     private int id;
-    private String type; // "Income" or "Expense"
-    private double amount;
-    private String category;
+    private TransactionType type;
+    private long amount; // in paise
+    private int categoryId; // see CategoryRegistry
     private String description;
     private LocalDate date;
     
-    private static int nextId = 1;
-    
-    public Transaction(String type, double amount, String category, String description, LocalDate date) {
-        this.id = nextId++;
+    public Transaction(TransactionType type, long amount, String category, String description, LocalDate date) {
+        this.id = TransactionIds.next();
         this.type = type;
         this.amount = amount;
-        this.category = category;
+        this.categoryId = CategoryRegistry.idOf(category);
         this.description = description;
         this.date = date;
     }
     
-    public Transaction(int id, String type, double amount, String category, String description, LocalDate date) {
+    public Transaction(int id, TransactionType type, long amount, String category, String description, LocalDate date) {
+        this(id, type, amount, CategoryRegistry.idOf(category), description, date);
+    }
+    
+    public Transaction(int id, TransactionType type, long amount, int categoryId, String description, LocalDate date) {
         this.id = id;
         this.type = type;
         this.amount = amount;
-        this.category = category;
+        this.categoryId = categoryId;
         this.description = description;
         this.date = date;
-        if (id >= nextId) nextId = id + 1;
+        TransactionIds.reserveThrough(id);
     }
     
     // Getters and Setters
     public int getId() { return id; }
     public void setId(int id) { this.id = id; }
     
-    public String getType() { return type; }
-    public void setType(String type) { this.type = type; }
+    public TransactionType getType() { return type; }
+    public void setType(TransactionType type) { this.type = type; }
+    
+    public long getAmount() { return amount; }
+    public void setAmount(long amount) { this.amount = amount; }
     
-    public double getAmount() { return amount; }
-    public void setAmount(double amount) { this.amount = amount; }
+    public String getCategory() { return CategoryRegistry.nameOf(categoryId); }
+    public void setCategory(String category) { this.categoryId = CategoryRegistry.idOf(category); }
     
-    public String getCategory() { return category; }
-    public void setCategory(String category) { this.category = category; }
+    public int getCategoryId() { return categoryId; }
     
     public String getDescription() { return description; }
     public void setDescription(String description) { this.description = description; }
@@ -55,7 +60,7 @@ public class Transaction {
     public String toString() {
         return String.format("%s - %s: ₹%.2f (%s)", 
             date.format(DateTimeFormatter.ofPattern("yyyy-MM-dd")),
-            type, amount, category);
+            type, BigDecimal.valueOf(amount, 2), getCategory());
     }
 }
 
@@ -0,0 +1,23 @@
+package models;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Hands out transaction ids. Each id is one atomic increment, so
+// transactions created on different threads never share an id. Ids read
+// back from disk are reported through reserveThrough() so that new ones
+// start above every stored id.
+public class TransactionIds {
+    private static final AtomicLong next = new AtomicLong(1);
+    
+    public static int next() {
+        long id = next.getAndIncrement();
+        if (id > Integer.MAX_VALUE) throw new IllegalStateException("Transaction ids exhausted");
+        return (int) id;
+    }
+    
+    // Keeps later ids above the given one; only a read when they already are
+    public static void reserveThrough(int id) {
+        if (id < next.get()) return;
+        next.accumulateAndGet(id + 1L, Math::max);
+    }
+}
@@ -0,0 +1,27 @@
+package models;
+
+public enum TransactionType {
+    INCOME("Income"),
+    EXPENSE("Expense");
+    
+    private final String label;
+    
+    TransactionType(String label) {
+        this.label = label;
+    }
+    
+    // Name used in the data files and shown in the UI
+    public String getLabel() { return label; }
+    
+    public static TransactionType fromLabel(String label) {
+        for (TransactionType type : values()) {
+            if (type.label.equals(label)) return type;
+        }
+        throw new IllegalArgumentException("Unknown transaction type: " + label);
+    }
+    
+    @Override
+    public String toString() {
+        return label;
+    }
+}
@@ -0,0 +1,112 @@
+package util;
+
+import models.TransactionType;
+
+// Fenwick trees over daily income and expense totals, kept up to date by
+// TransactionStore. Balance as of a date, and income, expenses or balance
+// between any two dates, cost O(log days) instead of a pass over the rows.
+// The covered day range grows as needed; growing rebuilds the trees from
+// the daily totals.
+public class BalanceIndex {
+    private static final int INITIAL_DAYS = 1024;
+    
+    private int origin; // epoch day stored at position 1
+    private int days;
+    private long[] dailyIncome = new long[0];
+    private long[] dailyExpenses = new long[0];
+    private long[] incomeTree = new long[1];
+    private long[] expenseTree = new long[1];
+    
+    public void add(int epochDay, TransactionType type, long amount) {
+        update(epochDay, type, amount);
+    }
+    
+    public void remove(int epochDay, TransactionType type, long amount) {
+        update(epochDay, type, -amount);
+    }
+    
+    private void update(int epochDay, TransactionType type, long delta) {
+        cover(epochDay);
+        int offset = epochDay - origin;
+        long[] tree;
+        if (type == TransactionType.INCOME) {
+            dailyIncome[offset] += delta;
+            tree = incomeTree;
+        } else {
+            dailyExpenses[offset] += delta;
+            tree = expenseTree;
+        }
+        for (int i = offset + 1; i <= days; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+    
+    // Income minus expenses of everything dated on or before the day
+    public long balanceAsOf(int epochDay) {
+        return prefix(incomeTree, epochDay) - prefix(expenseTree, epochDay);
+    }
+    
+    public long incomeBetween(int fromDay, int toDay) {
+        return between(incomeTree, fromDay, toDay);
+    }
+    
+    public long expensesBetween(int fromDay, int toDay) {
+        return between(expenseTree, fromDay, toDay);
+    }
+    
+    public long balanceBetween(int fromDay, int toDay) {
+        return incomeBetween(fromDay, toDay) - expensesBetween(fromDay, toDay);
+    }
+    
+    private long between(long[] tree, int fromDay, int toDay) {
+        if (toDay < fromDay) return 0;
+        long before = fromDay == Integer.MIN_VALUE ? 0 : prefix(tree, fromDay - 1);
+        return prefix(tree, toDay) - before;
+    }
+    
+    // Sum of the daily totals up to and including the day
+    private long prefix(long[] tree, int epochDay) {
+        if (days == 0 || epochDay < origin) return 0;
+        int position = (int) Math.min((long) epochDay - origin + 1, days);
+        long sum = 0;
+        for (int i = position; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+    
+    // Widens the covered range to include the day, leaving room on both
+    // sides so the range at least doubles each time it grows
+    private void cover(int epochDay) {
+        if (days > 0 && epochDay >= origin && epochDay < origin + days) return;
+        int low = days == 0 ? epochDay : Math.min(origin, epochDay);
+        int high = days == 0 ? epochDay + 1 : Math.max(origin + days, epochDay + 1);
+        int slack = Math.max(INITIAL_DAYS, high - low);
+        int newOrigin = low - slack / 2;
+        int newDays = high - low + slack;
+        
+        long[] income = new long[newDays];
+        long[] expenses = new long[newDays];
+        if (days > 0) {
+            System.arraycopy(dailyIncome, 0, income, origin - newOrigin, days);
+            System.arraycopy(dailyExpenses, 0, expenses, origin - newOrigin, days);
+        }
+        origin = newOrigin;
+        days = newDays;
+        dailyIncome = income;
+        dailyExpenses = expenses;
+        incomeTree = build(dailyIncome);
+        expenseTree = build(dailyExpenses);
+    }
+    
+    // Linear-time Fenwick construction from the daily totals
+    private static long[] build(long[] daily) {
+        long[] tree = new long[daily.length + 1];
+        for (int i = 1; i <= daily.length; i++) {
+            tree[i] += daily[i - 1];
+            int parent = i + (i & -i);
+            if (parent <= daily.length) tree[parent] += tree[i];
+        }
+        return tree;
+    }
+}
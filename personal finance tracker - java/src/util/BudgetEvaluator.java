@@ -0,0 +1,75 @@
+package util;
+
+import models.Budget;
+import models.TransactionType;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Evaluates every budget of a month against actual spending in one batch.
+// Actuals come from the store's monthly rollup, so the cost is one lookup
+// per budget regardless of how many transactions there are.
+public class BudgetEvaluator {
+    
+    public static class BudgetStatus {
+        private final Budget budget;
+        private final long actual;
+        
+        public BudgetStatus(Budget budget, long actual) {
+            this.budget = budget;
+            this.actual = actual;
+        }
+        
+        public Budget getBudget() { return budget; }
+        public long getActual() { return actual; }
+        // Negative when the budget is overspent
+        public long getRemaining() { return budget.getAmount() - actual; }
+        public boolean isOver() { return actual > budget.getAmount(); }
+        public double getPercentageUsed() { return Money.percentage(actual, budget.getAmount()); }
+    }
+    
+    public static class Evaluation {
+        private final List<BudgetStatus> statuses;
+        private final long totalBudget;
+        private final long totalActual;
+        
+        public Evaluation(List<BudgetStatus> statuses, long totalBudget, long totalActual) {
+            this.statuses = statuses;
+            this.totalBudget = totalBudget;
+            this.totalActual = totalActual;
+        }
+        
+        // One entry per budget of the month, in budget list order
+        public List<BudgetStatus> getStatuses() { return statuses; }
+        public boolean isEmpty() { return statuses.isEmpty(); }
+        public long getTotalBudget() { return totalBudget; }
+        public long getTotalActual() { return totalActual; }
+        public long getTotalRemaining() { return totalBudget - totalActual; }
+        public double getTotalPercentageUsed() { return Money.percentage(totalActual, totalBudget); }
+        
+        public int getOverCount() {
+            int count = 0;
+            for (BudgetStatus status : statuses) {
+                if (status.isOver()) count++;
+            }
+            return count;
+        }
+    }
+    
+    public static Evaluation evaluate(List<Budget> budgets, TransactionStore store, int month, int year) {
+        YearMonth yearMonth = YearMonth.of(year, month);
+        MonthlyRollup rollup = store.getRollup();
+        List<BudgetStatus> statuses = new ArrayList<>();
+        long totalBudget = 0;
+        long totalActual = 0;
+        for (Budget budget : budgets) {
+            if (budget.getMonth() != month || budget.getYear() != year) continue;
+            long actual = rollup.categoryTotal(TransactionType.EXPENSE, budget.getCategoryId(), yearMonth);
+            statuses.add(new BudgetStatus(budget, actual));
+            totalBudget += budget.getAmount();
+            totalActual += actual;
+        }
+        return new Evaluation(Collections.unmodifiableList(statuses), totalBudget, totalActual);
+    }
+}
@@ -2,80 +2,648 @@ package util;
 
 import models.*;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 public class FileManager {
     private static final String DATA_DIR = "data";
     private static final String TRANSACTIONS_FILE = DATA_DIR + File.separator + "transactions.txt";
     private static final String CATEGORIES_FILE = DATA_DIR + File.separator + "categories.txt";
     private static final String BUDGETS_FILE = DATA_DIR + File.separator + "budgets.txt";
+    private static final String TRANSACTIONS_JOURNAL = DATA_DIR + File.separator + "transactions.journal";
+    private static final String TRANSACTIONS_SNAPSHOT = DATA_DIR + File.separator + "transactions.bin";
+    // One snapshot file per month, e.g. data/transactions/2025-11.txt
+    private static final String TRANSACTIONS_DIR = DATA_DIR + File.separator + "transactions";
+    // Row count, max id and totals per partition, so history can stay on disk
+    private static final String PARTITION_INDEX = TRANSACTIONS_DIR + File.separator + "partitions.idx";
+    
+    // Number of journal records after which the journal is folded back into the snapshot
+    public static final int COMPACTION_THRESHOLD = 1000;
+    private static volatile int journalRecords = 0;
+    // Journal found on disk at startup: latest version per id (null when
+    // deleted) and the months those changes touched. The persistence writer
+    // and the event thread both reach it and the partition files, so the
+    // methods that do synchronize on the class.
+    private static Map<Integer, Transaction> journalState;
+    private static Set<YearMonth> journalMonths = new HashSet<>();
+    private static boolean journalMonthsKnown = true;
+    private static int journalMaxId = 0;
+    
+    // Keep a binary columnar copy of each partition for fast startup
+    private static boolean binarySnapshots = true;
+    
+    // Worker threads used to parse transactions.txt; files below the
+    // chunk size are always parsed on the calling thread
+    private static final long MIN_PARALLEL_CHUNK_BYTES = 4L << 20;
+    private static int loadParallelism = Runtime.getRuntime().availableProcessors();
+    
+    // Matched against the raw bytes of the type field while parsing
+    private static final TransactionType[] TRANSACTION_TYPES = TransactionType.values();
+    
+    public static void setBinarySnapshots(boolean enabled) {
+        binarySnapshots = enabled;
+        if (!enabled) {
+            new File(TRANSACTIONS_SNAPSHOT).delete();
+            for (YearMonth month : listPartitions()) {
+                partitionBinary(month).delete();
+            }
+        }
+    }
+    
+    public static void setLoadParallelism(int parallelism) {
+        loadParallelism = Math.max(1, parallelism);
+    }
+    
+    public static int getLoadParallelism() {
+        return loadParallelism;
+    }
     
     public static void initializeDataDirectory() {
-        File dir = new File(DATA_DIR);
+        File dir = new File(TRANSACTIONS_DIR);
         if (!dir.exists()) {
             dir.mkdirs();
         }
     }
     
+    // Writes to a temporary file and renames it over the target, so a crash
+    // mid-write never leaves a half-written data file behind
+    private static void writeAtomically(String path, Consumer<PrintWriter> body) throws IOException {
+        File target = new File(path);
+        File temp = new File(path + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+            body.accept(writer);
+            writer.flush();
+            if (writer.checkError()) {
+                throw new IOException("Failed writing " + temp.getName());
+            }
+            out.getFD().sync();
+        }
+        moveAtomically(temp, target);
+    }
+    
+    private static void moveAtomically(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+    
     // Transaction methods
-    public static void saveTransactions(List<Transaction> transactions) {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(TRANSACTIONS_FILE))) {
-            for (Transaction t : transactions) {
-                writer.println(String.format("%d|%s|%.2f|%s|%s|%s",
-                    t.getId(), t.getType(), t.getAmount(), t.getCategory(),
-                    t.getDescription(), t.getDate().format(DateTimeFormatter.ISO_DATE)));
+    private static File partitionText(YearMonth month) {
+        return new File(TRANSACTIONS_DIR, month + ".txt");
+    }
+    
+    private static File partitionBinary(YearMonth month) {
+        return new File(TRANSACTIONS_DIR, month + ".bin");
+    }
+    
+    // Months that have a partition on disk, oldest first
+    public static List<YearMonth> listPartitions() {
+        List<YearMonth> months = new ArrayList<>();
+        String[] names = new File(TRANSACTIONS_DIR).list();
+        if (names == null) return months;
+        for (String name : names) {
+            if (name.endsWith(".txt")) {
+                try {
+                    months.add(YearMonth.parse(name.substring(0, name.length() - 4)));
+                } catch (RuntimeException e) {
+                    // Not a partition file
+                }
+            }
+        }
+        Collections.sort(months);
+        return months;
+    }
+    
+    // Rewrites the partitions for the given months and then drops the journal
+    // those changes came from. The months must all be loaded: a given month
+    // with no transactions in the list has had them all deleted, and its
+    // partition goes. False when a write failed, in which case the journal
+    // is left in place.
+    public static synchronized boolean saveTransactions(List<Transaction> transactions, Set<YearMonth> months) {
+        Map<YearMonth, List<Transaction>> partitions = new TreeMap<>();
+        for (Transaction t : transactions) {
+            YearMonth month = YearMonth.from(t.getDate());
+            if (months.contains(month)) {
+                partitions.computeIfAbsent(month, m -> new ArrayList<>()).add(t);
             }
+        }
+        
+        Set<YearMonth> emptied = new HashSet<>(months);
+        emptied.removeAll(partitions.keySet());
+        try {
+            for (Map.Entry<YearMonth, List<Transaction>> entry : partitions.entrySet()) {
+                writeTransactionFile(partitionText(entry.getKey()), entry.getValue());
+                writeBinarySnapshot(partitionBinary(entry.getKey()), entry.getValue());
+            }
+            for (YearMonth month : emptied) {
+                partitionText(month).delete();
+                partitionBinary(month).delete();
+            }
+            updatePartitionIndex(partitions, emptied);
         } catch (IOException e) {
             System.err.println("Error saving transactions: " + e.getMessage());
+            return false;
         }
+        // The partitions now contain every journaled change
+        new File(TRANSACTIONS_JOURNAL).delete();
+        journalRecords = 0;
+        journalState = new LinkedHashMap<>();
+        journalMonths = new HashSet<>();
+        journalMonthsKnown = true;
+        return true;
     }
     
-    public static List<Transaction> loadTransactions() {
-        List<Transaction> transactions = new ArrayList<>();
-        File file = new File(TRANSACTIONS_FILE);
-        if (!file.exists()) return transactions;
+    public static class PartitionSummary {
+        private final YearMonth month;
+        private final int rows;
+        private final int maxId;
+        private final long income;
+        private final long expenses;
+        private final Set<String> categories;
+        
+        public PartitionSummary(YearMonth month, int rows, int maxId, long income, long expenses,
+                                Set<String> categories) {
+            this.month = month;
+            this.rows = rows;
+            this.maxId = maxId;
+            this.income = income;
+            this.expenses = expenses;
+            this.categories = Set.copyOf(categories);
+        }
         
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String line;
-            int maxId = 0;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split("\\|");
-                if (parts.length == 6) {
-                    int id = Integer.parseInt(parts[0]);
-                    String type = parts[1];
-                    double amount = Double.parseDouble(parts[2]);
-                    String category = parts[3];
-                    String description = parts[4];
-                    LocalDate date = LocalDate.parse(parts[5]);
-                    transactions.add(new Transaction(id, type, amount, category, description, date));
-                    if (id > maxId) maxId = id;
+        public YearMonth getMonth() { return month; }
+        public int getRows() { return rows; }
+        public int getMaxId() { return maxId; }
+        public long getIncome() { return income; }
+        public long getExpenses() { return expenses; }
+        // Names of the categories used by at least one row of the month
+        public Set<String> getCategories() { return categories; }
+    }
+    
+    private static PartitionSummary summarize(YearMonth month, List<Transaction> transactions) {
+        int maxId = 0;
+        Set<String> categories = new HashSet<>();
+        for (Transaction t : transactions) {
+            maxId = Math.max(maxId, t.getId());
+            categories.add(t.getCategory());
+        }
+        return new PartitionSummary(month, transactions.size(), maxId,
+            FinanceCalculator.calculateTotalIncome(transactions),
+            FinanceCalculator.calculateTotalExpenses(transactions), categories);
+    }
+    
+    // Summaries of every partition on disk, oldest first. Entries missing from
+    // the index or older than their partition file are rebuilt from the file.
+    public static synchronized List<PartitionSummary> getPartitionSummaries() {
+        File index = new File(PARTITION_INDEX);
+        Map<YearMonth, PartitionSummary> summaries = readPartitionIndex();
+        
+        List<YearMonth> partitions = listPartitions();
+        Map<YearMonth, List<Transaction>> stale = new TreeMap<>();
+        for (YearMonth month : partitions) {
+            if (!summaries.containsKey(month) || partitionText(month).lastModified() > index.lastModified()) {
+                stale.put(month, loadPartition(month));
+            }
+        }
+        Set<YearMonth> removed = new HashSet<>(summaries.keySet());
+        removed.removeAll(partitions);
+        if (!stale.isEmpty() || !removed.isEmpty()) {
+            try {
+                summaries = updatePartitionIndex(stale, removed);
+            } catch (IOException e) {
+                System.err.println("Error saving partition index: " + e.getMessage());
+                for (Map.Entry<YearMonth, List<Transaction>> entry : stale.entrySet()) {
+                    summaries.put(entry.getKey(), summarize(entry.getKey(), entry.getValue()));
+                }
+                summaries.keySet().removeAll(removed);
+            }
+        }
+        return new ArrayList<>(summaries.values());
+    }
+    
+    // One line per month: month|rows|max id|income|expenses|categories, the
+    // category names separated by tabs, which names never contain. Lines
+    // written before categories were recorded count as missing.
+    private static Map<YearMonth, PartitionSummary> readPartitionIndex() {
+        Map<YearMonth, PartitionSummary> summaries = new TreeMap<>();
+        File index = new File(PARTITION_INDEX);
+        if (!index.exists()) return summaries;
+        
+        try (PipeRecordReader reader = new PipeRecordReader(index)) {
+            while (reader.next()) {
+                if (reader.getFieldCount() == 6) {
+                    try {
+                        YearMonth month = YearMonth.parse(reader.getString(0));
+                        String names = reader.getString(5);
+                        Set<String> categories = names.isEmpty()
+                            ? Collections.emptySet() : Set.of(names.split("\t"));
+                        summaries.put(month, new PartitionSummary(month, reader.parseInt(1),
+                            reader.parseInt(2), reader.parseMinorUnits(3), reader.parseMinorUnits(4),
+                            categories));
+                    } catch (RuntimeException e) {
+                        // Missing entries are rebuilt from the partition file
+                    }
                 }
             }
-            // Set nextId to maxId + 1
-            if (maxId > 0) {
+        } catch (IOException e) {
+            System.err.println("Error reading partition index: " + e.getMessage());
+        }
+        return summaries;
+    }
+    
+    private static Map<YearMonth, PartitionSummary> updatePartitionIndex(
+            Map<YearMonth, List<Transaction>> changed, Set<YearMonth> removed) throws IOException {
+        Map<YearMonth, PartitionSummary> summaries = readPartitionIndex();
+        for (Map.Entry<YearMonth, List<Transaction>> entry : changed.entrySet()) {
+            summaries.put(entry.getKey(), summarize(entry.getKey(), entry.getValue()));
+        }
+        summaries.keySet().removeAll(removed);
+        
+        writeAtomically(PARTITION_INDEX, writer -> {
+            for (PartitionSummary summary : summaries.values()) {
+                writer.println(String.format("%s|%d|%d|%s|%s|%s", summary.getMonth(),
+                    summary.getRows(), summary.getMaxId(), Money.toPlainString(summary.getIncome()),
+                    Money.toPlainString(summary.getExpenses()), String.join("\t", summary.getCategories())));
+            }
+        });
+        return summaries;
+    }
+    
+    private static void writeTransactionFile(File file, List<Transaction> transactions) throws IOException {
+        writeAtomically(file.getPath(), writer -> {
+            for (Transaction t : transactions) {
+                writer.println(formatTransaction(t));
+            }
+        });
+    }
+    
+    private static void writeBinarySnapshot(File file, List<Transaction> transactions) {
+        if (!binarySnapshots) return;
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            TransactionSnapshot.write(transactions, temp);
+            moveAtomically(temp, file);
+        } catch (IOException e) {
+            System.err.println("Error saving transaction snapshot: " + e.getMessage());
+            file.delete();
+        }
+    }
+    
+    private static String formatTransaction(Transaction t) {
+        return String.format("%d|%s|%s|%s|%s|%s",
+            t.getId(), t.getType().getLabel(), Money.toPlainString(t.getAmount()), t.getCategory(),
+            t.getDescription(), t.getDate().format(DateTimeFormatter.ISO_DATE));
+    }
+    
+    private static Transaction readTransaction(PipeRecordReader reader, int offset) {
+        int id = reader.parseInt(offset);
+        TransactionType type = readType(reader, offset + 1);
+        long amount = reader.parseMinorUnits(offset + 2);
+        String category = reader.getSharedString(offset + 3);
+        String description = reader.getString(offset + 4);
+        LocalDate date = LocalDate.ofEpochDay(reader.parseEpochDay(offset + 5));
+        return new Transaction(id, type, amount, category, description, date);
+    }
+    
+    private static TransactionType readType(PipeRecordReader reader, int field) {
+        for (TransactionType type : TRANSACTION_TYPES) {
+            if (reader.fieldEquals(field, type.getLabel())) return type;
+        }
+        throw new IllegalArgumentException("Unknown transaction type: " + reader.getString(field));
+    }
+    
+    // Journal methods: single mutations are appended instead of rewriting the snapshot
+    public static String journalAddRecord(Transaction transaction) {
+        return "ADD|" + formatTransaction(transaction);
+    }
+    
+    // Old dates are recorded so compaction knows which partitions to rewrite
+    public static String journalUpdateRecord(Transaction oldTransaction, Transaction newTransaction) {
+        return "UPDATE|" + formatTransaction(newTransaction) + "|"
+            + oldTransaction.getDate().format(DateTimeFormatter.ISO_DATE);
+    }
+    
+    public static String journalDeleteRecord(Transaction transaction) {
+        return "DELETE|" + transaction.getId() + "|"
+            + transaction.getDate().format(DateTimeFormatter.ISO_DATE);
+    }
+    
+    public static synchronized void appendJournal(List<String> records) {
+        try (FileOutputStream out = new FileOutputStream(TRANSACTIONS_JOURNAL, true)) {
+            PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+            for (String record : records) {
+                writer.println(record);
+            }
+            writer.flush();
+            out.getFD().sync();
+            journalRecords += records.size();
+        } catch (IOException e) {
+            System.err.println("Error writing transaction journal: " + e.getMessage());
+        }
+    }
+    
+    public static int getJournalRecordCount() {
+        return journalRecords;
+    }
+    
+    // Partitions the startup journal still has to be folded into. Records written
+    // before old dates were journaled don't say, so every partition is returned.
+    public static synchronized Set<YearMonth> getJournalMonths() {
+        if (journalState == null) readJournal();
+        Set<YearMonth> months = new HashSet<>(journalMonths);
+        if (!journalMonthsKnown) months.addAll(listPartitions());
+        return months;
+    }
+    
+    public static synchronized boolean isJournalMonthsKnown() {
+        if (journalState == null) readJournal();
+        return journalMonthsKnown;
+    }
+    
+    private static void markJournalMonth(int epochDay) {
+        journalMonths.add(YearMonth.from(LocalDate.ofEpochDay(epochDay)));
+    }
+    
+    private static void readJournal() {
+        File file = new File(TRANSACTIONS_JOURNAL);
+        journalState = new LinkedHashMap<>();
+        journalRecords = 0;
+        journalMonths = new HashSet<>();
+        journalMonthsKnown = true;
+        journalMaxId = 0;
+        if (!file.exists()) return;
+        
+        try (PipeRecordReader reader = new PipeRecordReader(file)) {
+            while (reader.next()) {
+                int fields = reader.getFieldCount();
                 try {
-                    java.lang.reflect.Field field = Transaction.class.getDeclaredField("nextId");
-                    field.setAccessible(true);
-                    field.setInt(null, maxId + 1);
-                } catch (Exception e) {
-                    // Ignore reflection errors
+                    if (fields == 7 && reader.fieldEquals(0, "ADD")) {
+                        Transaction t = readTransaction(reader, 1);
+                        journalState.put(t.getId(), t);
+                        markJournalMonth(reader.parseEpochDay(6));
+                        journalMaxId = Math.max(journalMaxId, t.getId());
+                    } else if ((fields == 7 || fields == 8) && reader.fieldEquals(0, "UPDATE")) {
+                        Transaction t = readTransaction(reader, 1);
+                        // Both the old and the new month need rewriting at compaction
+                        if (fields == 8) {
+                            markJournalMonth(reader.parseEpochDay(7));
+                        } else {
+                            journalMonthsKnown = false;
+                        }
+                        journalState.put(t.getId(), t);
+                        markJournalMonth(reader.parseEpochDay(6));
+                        journalMaxId = Math.max(journalMaxId, t.getId());
+                    } else if ((fields == 2 || fields == 3) && reader.fieldEquals(0, "DELETE")) {
+                        int id = reader.parseInt(1);
+                        if (fields == 3) {
+                            markJournalMonth(reader.parseEpochDay(2));
+                        } else {
+                            journalMonthsKnown = false;
+                        }
+                        journalState.put(id, null);
+                    } else {
+                        continue;
+                    }
+                    journalRecords++;
+                } catch (RuntimeException e) {
+                    // Skip records torn by a crash mid-write
                 }
             }
         } catch (IOException e) {
-            System.err.println("Error loading transactions: " + e.getMessage());
+            System.err.println("Error reading transaction journal: " + e.getMessage());
+        }
+    }
+    
+    // Transactions recorded in one month's partition, without journaled changes
+    public static List<Transaction> loadPartition(YearMonth month) {
+        List<Transaction> transactions = new ArrayList<>();
+        readSnapshot(partitionText(month), partitionBinary(month), transactions);
+        return transactions;
+    }
+    
+    // Reads a snapshot into the list, returning the largest id seen. The binary
+    // copy is only trusted while it is at least as new as the text file.
+    private static int readSnapshot(File text, File binary, List<Transaction> transactions) {
+        int maxId = 0;
+        if (binarySnapshots && binary.exists() && binary.lastModified() >= text.lastModified()) {
+            try {
+                List<Transaction> loaded = TransactionSnapshot.read(binary);
+                for (Transaction t : loaded) {
+                    if (t.getId() > maxId) maxId = t.getId();
+                }
+                transactions.addAll(loaded);
+                return maxId;
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Error loading transaction snapshot, falling back to text: " + e.getMessage());
+            }
+        }
+        
+        if (text.exists()) {
+            try {
+                int start = transactions.size();
+                maxId = readTransactionFile(text, transactions);
+                // Convert existing text data so the next startup can map it directly
+                writeBinarySnapshot(binary, transactions.subList(start, transactions.size()));
+            } catch (IOException e) {
+                System.err.println("Error loading transactions: " + e.getMessage());
+            }
+        }
+        return maxId;
+    }
+    
+    // Splits a data/transactions.txt from before month partitioning into partitions
+    private static void migrateSingleFileLayout() {
+        File legacy = new File(TRANSACTIONS_FILE);
+        if (!legacy.exists()) return;
+        
+        List<Transaction> transactions = new ArrayList<>();
+        readSnapshot(legacy, new File(TRANSACTIONS_SNAPSHOT), transactions);
+        new File(TRANSACTIONS_DIR).mkdirs();
+        Map<YearMonth, List<Transaction>> partitions = new TreeMap<>();
+        for (Transaction t : transactions) {
+            partitions.computeIfAbsent(YearMonth.from(t.getDate()), m -> new ArrayList<>()).add(t);
+        }
+        try {
+            for (Map.Entry<YearMonth, List<Transaction>> entry : partitions.entrySet()) {
+                writeTransactionFile(partitionText(entry.getKey()), entry.getValue());
+                writeBinarySnapshot(partitionBinary(entry.getKey()), entry.getValue());
+            }
+            // Keep the original around rather than deleting user data
+            moveAtomically(legacy, new File(TRANSACTIONS_FILE + ".migrated"));
+            new File(TRANSACTIONS_SNAPSHOT).delete();
+        } catch (IOException e) {
+            System.err.println("Error migrating transactions to monthly files: " + e.getMessage());
+        }
+    }
+    
+    // Parses a pipe-delimited transaction file into the list, returning the
+    // largest id seen. Package-private for LoadParallelismBenchmark.
+    static int readTransactionFile(File file, List<Transaction> transactions) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            int chunks = (int) Math.min(loadParallelism, Math.max(1, size / MIN_PARALLEL_CHUNK_BYTES));
+            if (chunks <= 1) {
+                return readTransactionChunk(channel, 0, size, transactions);
+            }
+            
+            // Split at newlines so every chunk starts on a fresh line
+            long[] bounds = new long[chunks + 1];
+            bounds[chunks] = size;
+            for (int i = 1; i < chunks; i++) {
+                bounds[i] = Math.max(bounds[i - 1], nextLineStart(channel, size * i / chunks, size));
+            }
+            
+            List<Callable<List<Transaction>>> tasks = new ArrayList<>();
+            int[] chunkMaxIds = new int[chunks];
+            for (int i = 0; i < chunks; i++) {
+                final int chunk = i;
+                tasks.add(() -> {
+                    List<Transaction> part = new ArrayList<>();
+                    chunkMaxIds[chunk] = readTransactionChunk(channel, bounds[chunk], bounds[chunk + 1], part);
+                    return part;
+                });
+            }
+            
+            ForkJoinPool pool = new ForkJoinPool(chunks);
+            try {
+                int maxId = 0;
+                // Futures come back in submission order, which keeps file order
+                for (Future<List<Transaction>> future : pool.invokeAll(tasks)) {
+                    transactions.addAll(future.get());
+                }
+                for (int chunkMaxId : chunkMaxIds) {
+                    maxId = Math.max(maxId, chunkMaxId);
+                }
+                return maxId;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while loading transactions", e);
+            } catch (ExecutionException e) {
+                throw new IOException("Error loading transactions", e.getCause());
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+    
+    private static int readTransactionChunk(FileChannel channel, long start, long end,
+                                            List<Transaction> transactions) throws IOException {
+        int maxId = 0;
+        try (PipeRecordReader reader = new PipeRecordReader(channel, start, end)) {
+            while (reader.next()) {
+                if (reader.getFieldCount() == 6) {
+                    try {
+                        Transaction t = readTransaction(reader, 0);
+                        transactions.add(t);
+                        if (t.getId() > maxId) maxId = t.getId();
+                    } catch (RuntimeException e) {
+                        // Skip malformed lines
+                    }
+                }
+            }
+        }
+        return maxId;
+    }
+    
+    private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) break;
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
         }
+        return size;
+    }
+    
+    public static List<Transaction> loadTransactions() {
+        return loadTransactions(null, null);
+    }
+    
+    // Transactions dated in [from, until), either bound may be null, with the
+    // startup journal applied on top of the partitions
+    public static synchronized List<Transaction> loadTransactions(YearMonth from, YearMonth until) {
+        migrateSingleFileLayout();
+        if (journalState == null) readJournal();
+        
+        List<Transaction> transactions = new ArrayList<>();
+        Set<Integer> placed = new HashSet<>();
+        int maxId = journalMaxId;
+        for (YearMonth month : listPartitions()) {
+            if (!inRange(month, from, until)) continue;
+            for (Transaction t : loadPartition(month)) {
+                maxId = Math.max(maxId, t.getId());
+                if (!journalState.containsKey(t.getId())) {
+                    transactions.add(t);
+                    continue;
+                }
+                // A journaled version that stayed in this month keeps the row's position
+                Transaction latest = journalState.get(t.getId());
+                if (latest != null && YearMonth.from(latest.getDate()).equals(month)
+                        && placed.add(latest.getId())) {
+                    transactions.add(latest);
+                }
+            }
+        }
+        for (Transaction t : journalState.values()) {
+            if (t != null && !placed.contains(t.getId())
+                    && inRange(YearMonth.from(t.getDate()), from, until)) {
+                transactions.add(t);
+            }
+        }
+        
+        // Ids must stay unique across partitions that are not loaded yet
+        for (PartitionSummary summary : getPartitionSummaries()) {
+            maxId = Math.max(maxId, summary.getMaxId());
+        }
+        
+        // New transactions get ids above every stored one
+        if (maxId > 0) TransactionIds.reserveThrough(maxId);
         return transactions;
     }
     
+    private static boolean inRange(YearMonth month, YearMonth from, YearMonth until) {
+        return (from == null || !month.isBefore(from)) && (until == null || month.isBefore(until));
+    }
+    
     // Category methods
     public static void saveCategories(List<Category> categories) {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(CATEGORIES_FILE))) {
-            for (Category c : categories) {
-                writer.println(c.getName() + "|" + c.getType());
-            }
+        try {
+            writeAtomically(CATEGORIES_FILE, writer -> {
+                for (Category c : categories) {
+                    writer.println(c.getName() + "|" + c.getType().getLabel());
+                }
+            });
         } catch (IOException e) {
             System.err.println("Error saving categories: " + e.getMessage());
         }
@@ -86,25 +654,27 @@ public class FileManager {
         File file = new File(CATEGORIES_FILE);
         if (!file.exists()) {
             // Initialize with default categories
-            categories.add(new Category("Salary", "Income"));
-            categories.add(new Category("Freelance", "Income"));
-            categories.add(new Category("Investment", "Income"));
-            categories.add(new Category("Food", "Expense"));
-            categories.add(new Category("Transport", "Expense"));
-            categories.add(new Category("Entertainment", "Expense"));
-            categories.add(new Category("Bills", "Expense"));
-            categories.add(new Category("Shopping", "Expense"));
-            categories.add(new Category("Healthcare", "Expense"));
-            categories.add(new Category("Other", "Expense"));
+            categories.add(new Category("Salary", TransactionType.INCOME));
+            categories.add(new Category("Freelance", TransactionType.INCOME));
+            categories.add(new Category("Investment", TransactionType.INCOME));
+            categories.add(new Category("Food", TransactionType.EXPENSE));
+            categories.add(new Category("Transport", TransactionType.EXPENSE));
+            categories.add(new Category("Entertainment", TransactionType.EXPENSE));
+            categories.add(new Category("Bills", TransactionType.EXPENSE));
+            categories.add(new Category("Shopping", TransactionType.EXPENSE));
+            categories.add(new Category("Healthcare", TransactionType.EXPENSE));
+            categories.add(new Category("Other", TransactionType.EXPENSE));
             return categories;
         }
         
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split("\\|");
-                if (parts.length == 2) {
-                    categories.add(new Category(parts[0], parts[1]));
+        try (PipeRecordReader reader = new PipeRecordReader(file)) {
+            while (reader.next()) {
+                if (reader.getFieldCount() == 2) {
+                    try {
+                        categories.add(new Category(reader.getString(0), readType(reader, 1)));
+                    } catch (RuntimeException e) {
+                        // Skip malformed lines
+                    }
                 }
             }
         } catch (IOException e) {
@@ -115,11 +685,13 @@ public class FileManager {
     
     // Budget methods
     public static void saveBudgets(List<Budget> budgets) {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(BUDGETS_FILE))) {
-            for (Budget b : budgets) {
-                writer.println(String.format("%s|%.2f|%d|%d",
-                    b.getCategory(), b.getAmount(), b.getMonth(), b.getYear()));
-            }
+        try {
+            writeAtomically(BUDGETS_FILE, writer -> {
+                for (Budget b : budgets) {
+                    writer.println(String.format("%s|%s|%d|%d",
+                        b.getCategory(), Money.toPlainString(b.getAmount()), b.getMonth(), b.getYear()));
+                }
+            });
         } catch (IOException e) {
             System.err.println("Error saving budgets: " + e.getMessage());
         }
@@ -130,16 +702,18 @@ public class FileManager {
         File file = new File(BUDGETS_FILE);
         if (!file.exists()) return budgets;
         
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split("\\|");
-                if (parts.length == 4) {
-                    String category = parts[0];
-                    double amount = Double.parseDouble(parts[1]);
-                    int month = Integer.parseInt(parts[2]);
-                    int year = Integer.parseInt(parts[3]);
-                    budgets.add(new Budget(category, amount, month, year));
+        try (PipeRecordReader reader = new PipeRecordReader(file)) {
+            while (reader.next()) {
+                if (reader.getFieldCount() == 4) {
+                    try {
+                        String category = reader.getSharedString(0);
+                        long amount = reader.parseMinorUnits(1);
+                        int month = reader.parseInt(2);
+                        int year = reader.parseInt(3);
+                        budgets.add(new Budget(category, amount, month, year));
+                    } catch (RuntimeException e) {
+                        // Skip malformed lines
+                    }
                 }
             }
         } catch (IOException e) {
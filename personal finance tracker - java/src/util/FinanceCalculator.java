@@ -1,50 +1,76 @@
 package util;
 
+import models.CategoryRegistry;
 import models.Transaction;
+import models.TransactionType;
 import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
 public class FinanceCalculator {
     
-    public static double calculateTotalIncome(List<Transaction> transactions) {
+    public static long calculateTotalIncome(List<Transaction> transactions) {
         return transactions.stream()
-            .filter(t -> t.getType().equals("Income"))
-            .mapToDouble(Transaction::getAmount)
+            .filter(t -> t.getType() == TransactionType.INCOME)
+            .mapToLong(Transaction::getAmount)
             .sum();
     }
     
-    public static double calculateTotalExpenses(List<Transaction> transactions) {
+    public static long calculateTotalExpenses(List<Transaction> transactions) {
         return transactions.stream()
-            .filter(t -> t.getType().equals("Expense"))
-            .mapToDouble(Transaction::getAmount)
+            .filter(t -> t.getType() == TransactionType.EXPENSE)
+            .mapToLong(Transaction::getAmount)
             .sum();
     }
     
-    public static double calculateBalance(List<Transaction> transactions) {
-        return calculateTotalIncome(transactions) - calculateTotalExpenses(transactions);
+    public static long calculateBalance(List<Transaction> transactions) {
+        return summarize(transactions).getBalance();
     }
     
-    public static Map<String, Double> getExpensesByCategory(List<Transaction> transactions) {
+    // Every summary metric in one pass over the list
+    public static TransactionSummary summarize(List<Transaction> transactions) {
+        long income = 0;
+        long expenses = 0;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        Map<String, Long> expensesByCategory = new HashMap<>();
+        for (Transaction t : transactions) {
+            long amount = t.getAmount();
+            if (t.getType() == TransactionType.INCOME) {
+                income += amount;
+            } else {
+                expenses += amount;
+                expensesByCategory.merge(t.getCategory(), amount, Long::sum);
+            }
+            min = Math.min(min, amount);
+            max = Math.max(max, amount);
+        }
+        return new TransactionSummary(income, expenses, transactions.size(), min, max, expensesByCategory);
+    }
+    
+    public static Map<String, Long> getExpensesByCategory(List<Transaction> transactions) {
         return transactions.stream()
-            .filter(t -> t.getType().equals("Expense"))
+            .filter(t -> t.getType() == TransactionType.EXPENSE)
             .collect(Collectors.groupingBy(
                 Transaction::getCategory,
-                Collectors.summingDouble(Transaction::getAmount)
+                Collectors.summingLong(Transaction::getAmount)
             ));
     }
     
-    public static double getCategoryExpenseForMonth(List<Transaction> transactions, 
+    public static long getCategoryExpenseForMonth(List<Transaction> transactions, 
                                                    String category, int month, int year) {
+        int categoryId = CategoryRegistry.find(category);
         return transactions.stream()
-            .filter(t -> t.getType().equals("Expense"))
-            .filter(t -> t.getCategory().equals(category))
+            .filter(t -> t.getType() == TransactionType.EXPENSE)
+            .filter(t -> t.getCategoryId() == categoryId)
             .filter(t -> {
                 LocalDate date = t.getDate();
                 return date.getMonthValue() == month && date.getYear() == year;
             })
-            .mapToDouble(Transaction::getAmount)
+            .mapToLong(Transaction::getAmount)
             .sum();
     }
     
@@ -57,6 +83,86 @@ public class FinanceCalculator {
             })
             .collect(Collectors.toList());
     }
+    
+    // Lookups in the store's monthly rollup, no rows are scanned
+    
+    public static long calculateTotalIncome(TransactionStore store) {
+        return store.getRollup().total(TransactionType.INCOME);
+    }
+    
+    public static long calculateTotalExpenses(TransactionStore store) {
+        return store.getRollup().total(TransactionType.EXPENSE);
+    }
+    
+    public static long calculateIncomeForMonth(TransactionStore store, int month, int year) {
+        return store.getRollup().total(TransactionType.INCOME, YearMonth.of(year, month));
+    }
+    
+    public static long calculateExpensesForMonth(TransactionStore store, int month, int year) {
+        return store.getRollup().total(TransactionType.EXPENSE, YearMonth.of(year, month));
+    }
+    
+    public static long calculateIncomeForYear(TransactionStore store, int year) {
+        return store.getRollup().total(TransactionType.INCOME, YearMonth.of(year, 1), YearMonth.of(year, 12));
+    }
+    
+    public static long calculateExpensesForYear(TransactionStore store, int year) {
+        return store.getRollup().total(TransactionType.EXPENSE, YearMonth.of(year, 1), YearMonth.of(year, 12));
+    }
+    
+    // Date range sums from the store's balance index, O(log days)
+    
+    public static long calculateIncomeBetween(TransactionStore store, LocalDate from, LocalDate to) {
+        return store.getBalanceIndex().incomeBetween((int) from.toEpochDay(), (int) to.toEpochDay());
+    }
+    
+    public static long calculateExpensesBetween(TransactionStore store, LocalDate from, LocalDate to) {
+        return store.getBalanceIndex().expensesBetween((int) from.toEpochDay(), (int) to.toEpochDay());
+    }
+    
+    public static long calculateBalanceBetween(TransactionStore store, LocalDate from, LocalDate to) {
+        return store.getBalanceIndex().balanceBetween((int) from.toEpochDay(), (int) to.toEpochDay());
+    }
+    
+    // Balance of everything dated on or before the date
+    public static long calculateBalanceAsOf(TransactionStore store, LocalDate date) {
+        return store.getBalanceIndex().balanceAsOf((int) date.toEpochDay());
+    }
+    
+    // Every summary metric for the month from the rollup
+    public static TransactionSummary summarizeMonth(TransactionStore store, int month, int year) {
+        YearMonth yearMonth = YearMonth.of(year, month);
+        MonthlyRollup rollup = store.getRollup();
+        long[] extremes = store.extremes(yearMonth);
+        return new TransactionSummary(
+            rollup.total(TransactionType.INCOME, yearMonth),
+            rollup.total(TransactionType.EXPENSE, yearMonth),
+            rollup.count(yearMonth),
+            extremes == null ? 0 : extremes[0],
+            extremes == null ? 0 : extremes[1],
+            rollup.categoryTotals(TransactionType.EXPENSE, yearMonth));
+    }
+    
+    // Binary search in the store's date index instead of testing every date
+    public static List<Transaction> getTransactionsForMonth(TransactionStore store, int month, int year) {
+        YearMonth yearMonth = YearMonth.of(year, month);
+        return store.between((int) yearMonth.atDay(1).toEpochDay(),
+            (int) yearMonth.atEndOfMonth().toEpochDay());
+    }
+    
+    public static int countTransactionsForMonth(TransactionStore store, int month, int year) {
+        return store.getRollup().count(YearMonth.of(year, month));
+    }
+    
+    public static Map<String, Long> getExpensesByCategoryForMonth(TransactionStore store, int month, int year) {
+        return store.getRollup().categoryTotals(TransactionType.EXPENSE, YearMonth.of(year, month));
+    }
+    
+    public static long getCategoryExpenseForMonth(TransactionStore store, 
+                                                   String category, int month, int year) {
+        return store.getRollup().categoryTotal(TransactionType.EXPENSE,
+            CategoryRegistry.find(category), YearMonth.of(year, month));
+    }
 }
 
 
@@ -0,0 +1,182 @@
+package util;
+
+import models.Budget;
+import models.Category;
+import models.Transaction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+
+// Owns the transactions, categories and budgets. Every change goes through
+// the write lock of one StampedLock, so writers are serialized and any
+// thread may make them. Readers of the transaction store either run under
+// the read lock with read(), or, for short lookups, try readOptimistic()
+// first and only take the lock when a writer got in the way. Categories and
+// budgets are immutable lists replaced on every change, so reading them
+// needs no lock at all.
+public class FinanceRepository {
+    private final StampedLock lock = new StampedLock();
+    private final TransactionStore transactions;
+    private volatile List<Category> categories;
+    private volatile List<Budget> budgets;
+    
+    public FinanceRepository(List<Transaction> transactions, List<Category> categories, List<Budget> budgets) {
+        this.transactions = new TransactionStore(transactions);
+        this.categories = List.copyOf(categories);
+        this.budgets = List.copyOf(budgets);
+    }
+    
+    // Runs the reader with no change in progress. The store and anything it
+    // hands out (row numbers, asList() views) are only valid inside the
+    // reader. The lock is not reentrant: a reader must not call back into
+    // the repository's writers. Every change waits for the reader, so copy
+    // out what is needed and format or otherwise process it afterwards.
+    public <T> T read(Function<TransactionStore, T> reader) {
+        long stamp = lock.readLock();
+        try {
+            return reader.apply(transactions);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    // Runs the reader without locking and keeps its result if no change
+    // started meanwhile, else runs it again under the read lock. Meant for
+    // short lookups with no side effects: a reader overlapping a change can
+    // see half-updated columns and throw, which is treated as a retry.
+    public <T> T readOptimistic(Function<TransactionStore, T> reader) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T result = reader.apply(transactions);
+                if (lock.validate(stamp)) return result;
+            } catch (RuntimeException e) {
+                if (lock.validate(stamp)) throw e;
+            }
+        }
+        return read(reader);
+    }
+    
+    public int transactionCount() {
+        return readOptimistic(TransactionStore::size);
+    }
+    
+    // Copy of every loaded transaction, for saving off the event thread
+    public List<Transaction> snapshotTransactions() {
+        return read(store -> new ArrayList<>(store.asList()));
+    }
+    
+    public void addTransaction(Transaction transaction) {
+        long stamp = lock.writeLock();
+        try {
+            transactions.add(transaction);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    // False when no transaction has the id
+    public boolean removeTransaction(int id) {
+        long stamp = lock.writeLock();
+        try {
+            int row = transactions.rowOfId(id);
+            if (row < 0) return false;
+            transactions.remove(row);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    // Replaces the transaction with the given id; false when there is none
+    public boolean updateTransaction(int id, Transaction transaction) {
+        long stamp = lock.writeLock();
+        try {
+            int row = transactions.rowOfId(id);
+            if (row < 0) return false;
+            transactions.set(row, transaction);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    // Older history read from disk, inserted before every loaded row
+    public void prependHistory(List<Transaction> history) {
+        long stamp = lock.writeLock();
+        try {
+            transactions.prependAll(history);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    // Read-only; a later change replaces the list rather than altering it
+    public List<Category> getCategories() {
+        return categories;
+    }
+    
+    // False when the category already exists
+    public boolean addCategory(Category category) {
+        long stamp = lock.writeLock();
+        try {
+            if (categories.contains(category)) return false;
+            List<Category> updated = new ArrayList<>(categories);
+            updated.add(category);
+            categories = List.copyOf(updated);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    public boolean removeCategory(Category category) {
+        long stamp = lock.writeLock();
+        try {
+            List<Category> updated = new ArrayList<>(categories);
+            if (!updated.remove(category)) return false;
+            categories = List.copyOf(updated);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    // Read-only; a later change replaces the list rather than altering it
+    public List<Budget> getBudgets() {
+        return budgets;
+    }
+    
+    // Adds the budget, replacing any for the same category and month;
+    // returns the replaced budget, or null
+    public Budget putBudget(Budget budget) {
+        long stamp = lock.writeLock();
+        try {
+            List<Budget> updated = new ArrayList<>(budgets);
+            int existing = updated.indexOf(budget);
+            Budget replaced = null;
+            if (existing >= 0) {
+                replaced = updated.set(existing, budget);
+            } else {
+                updated.add(budget);
+            }
+            budgets = List.copyOf(updated);
+            return replaced;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    public boolean removeBudget(Budget budget) {
+        long stamp = lock.writeLock();
+        try {
+            List<Budget> updated = new ArrayList<>(budgets);
+            if (!updated.remove(budget)) return false;
+            budgets = List.copyOf(updated);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+}
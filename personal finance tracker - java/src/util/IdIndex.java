@@ -0,0 +1,122 @@
+package util;
+
+import java.util.Arrays;
+
+// Open-addressing hash map from transaction id to row, on primitive int
+// arrays so lookups never box. Linear probing; removed entries become
+// tombstones that probes skip and inserts reuse, and the table is rebuilt
+// when live entries plus tombstones pass half its capacity.
+public class IdIndex {
+    private static final byte EMPTY = 0;
+    private static final byte FULL = 1;
+    private static final byte REMOVED = 2;
+    
+    private int[] keys;
+    private int[] values;
+    private byte[] states;
+    private int mask;
+    private int size;
+    private int tombstones;
+    
+    public IdIndex() {
+        this(16);
+    }
+    
+    public IdIndex(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    // Row for the id, or -1 when the id is not indexed
+    public int get(int key) {
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            byte state = states[slot];
+            if (state == EMPTY) return -1;
+            if (state == FULL && keys[slot] == key) return values[slot];
+        }
+    }
+    
+    public void put(int key, int value) {
+        int reuse = -1;
+        int slot = hash(key) & mask;
+        for (; ; slot = (slot + 1) & mask) {
+            byte state = states[slot];
+            if (state == EMPTY) break;
+            if (state == REMOVED) {
+                if (reuse < 0) reuse = slot;
+            } else if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+        }
+        if (reuse >= 0) {
+            slot = reuse;
+            tombstones--;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        states[slot] = FULL;
+        size++;
+        if ((size + tombstones) * 2 > states.length) {
+            rehash(tableSizeFor(size));
+        }
+    }
+    
+    public void remove(int key) {
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            byte state = states[slot];
+            if (state == EMPTY) return;
+            if (state == FULL && keys[slot] == key) {
+                states[slot] = REMOVED;
+                size--;
+                tombstones++;
+                return;
+            }
+        }
+    }
+    
+    public void clear() {
+        Arrays.fill(states, EMPTY);
+        size = 0;
+        tombstones = 0;
+    }
+    
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        byte[] oldStates = states;
+        allocate(capacity);
+        for (int i = 0; i < oldStates.length; i++) {
+            if (oldStates[i] == FULL) put(oldKeys[i], oldValues[i]);
+        }
+    }
+    
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        states = new byte[capacity];
+        mask = capacity - 1;
+        size = 0;
+        tombstones = 0;
+    }
+    
+    // Power of two that keeps the given number of entries under half full
+    private static int tableSizeFor(int entries) {
+        int capacity = 16;
+        while (capacity < entries * 4L && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+    
+    // Spreads sequential ids across the table (murmur3 finalizer)
+    private static int hash(int key) {
+        int h = key * 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,31 @@
+package util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+// Amounts are held as whole paise in a long so sums are exact; these helpers
+// convert at the edges (user input, display and the text data files).
+public class Money {
+    
+    public static long parse(String text) {
+        try {
+            return new BigDecimal(text.trim()).setScale(2, RoundingMode.HALF_UP)
+                .unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Amount out of range: " + text);
+        }
+    }
+    
+    // Exact decimal value, usable with String.format's %.2f and %,.2f
+    public static BigDecimal toDecimal(long paise) {
+        return BigDecimal.valueOf(paise, 2);
+    }
+    
+    public static String toPlainString(long paise) {
+        return toDecimal(paise).toPlainString();
+    }
+    
+    public static double percentage(long part, long whole) {
+        return whole != 0 ? (double) part / whole * 100 : 0;
+    }
+}
@@ -0,0 +1,140 @@
+package util;
+
+import models.CategoryRegistry;
+import models.TransactionType;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Running totals per (year, month, type, category), kept up to date by
+// TransactionStore as rows are added, replaced and removed. Every change
+// costs O(1) and month, category and year-to-date queries are lookups
+// instead of scans over the transactions. Each month also tracks its
+// smallest and largest amount; removing one of those marks them stale
+// until the store rescans that month.
+public class MonthlyRollup {
+    private static final int TYPE_COUNT = TransactionType.values().length;
+    
+    private final Map<Integer, MonthTotals> months = new HashMap<>();
+    private final long[] totals = new long[TYPE_COUNT];
+    
+    private static class MonthTotals {
+        int count;
+        long minAmount = Long.MAX_VALUE;
+        long maxAmount = Long.MIN_VALUE;
+        boolean extremesStale;
+        final long[] totals = new long[TYPE_COUNT];
+        // Indexed by [type][categoryId]; counts tell which categories have rows
+        long[][] categoryTotals = new long[TYPE_COUNT][0];
+        int[][] categoryCounts = new int[TYPE_COUNT][0];
+        
+        void add(int type, int categoryId, long amount, int sign) {
+            count += sign;
+            totals[type] += sign * amount;
+            if (categoryId >= categoryTotals[type].length) {
+                int length = Math.max(categoryId + 1, CategoryRegistry.size());
+                categoryTotals[type] = Arrays.copyOf(categoryTotals[type], length);
+                categoryCounts[type] = Arrays.copyOf(categoryCounts[type], length);
+            }
+            categoryTotals[type][categoryId] += sign * amount;
+            categoryCounts[type][categoryId] += sign;
+            if (sign > 0) {
+                minAmount = Math.min(minAmount, amount);
+                maxAmount = Math.max(maxAmount, amount);
+            } else if (amount == minAmount || amount == maxAmount) {
+                extremesStale = true;
+            }
+        }
+    }
+    
+    public void add(int epochDay, TransactionType type, int categoryId, long amount) {
+        update(epochDay, type, categoryId, amount, 1);
+    }
+    
+    public void remove(int epochDay, TransactionType type, int categoryId, long amount) {
+        update(epochDay, type, categoryId, amount, -1);
+    }
+    
+    private void update(int epochDay, TransactionType type, int categoryId, long amount, int sign) {
+        int key = key(LocalDate.ofEpochDay(epochDay));
+        MonthTotals month = months.get(key);
+        if (month == null) {
+            month = new MonthTotals();
+            months.put(key, month);
+        }
+        month.add(type.ordinal(), categoryId, amount, sign);
+        totals[type.ordinal()] += sign * amount;
+        if (month.count == 0) months.remove(key);
+    }
+    
+    // All-time total of the type
+    public long total(TransactionType type) {
+        return totals[type.ordinal()];
+    }
+    
+    public long total(TransactionType type, YearMonth month) {
+        MonthTotals totals = months.get(key(month));
+        return totals == null ? 0 : totals.totals[type.ordinal()];
+    }
+    
+    // Total of the type over the months from..to inclusive
+    public long total(TransactionType type, YearMonth from, YearMonth to) {
+        long total = 0;
+        for (YearMonth month = from; !month.isAfter(to); month = month.plusMonths(1)) {
+            total += total(type, month);
+        }
+        return total;
+    }
+    
+    public long categoryTotal(TransactionType type, int categoryId, YearMonth month) {
+        MonthTotals totals = months.get(key(month));
+        if (totals == null || categoryId < 0) return 0;
+        long[] byCategory = totals.categoryTotals[type.ordinal()];
+        return categoryId < byCategory.length ? byCategory[categoryId] : 0;
+    }
+    
+    // Totals per category name for categories with at least one row of the type
+    public Map<String, Long> categoryTotals(TransactionType type, YearMonth month) {
+        Map<String, Long> result = new HashMap<>();
+        MonthTotals totals = months.get(key(month));
+        if (totals == null) return result;
+        long[] byCategory = totals.categoryTotals[type.ordinal()];
+        int[] counts = totals.categoryCounts[type.ordinal()];
+        for (int c = 0; c < byCategory.length; c++) {
+            if (counts[c] > 0) result.put(CategoryRegistry.nameOf(c), byCategory[c]);
+        }
+        return result;
+    }
+    
+    // Smallest and largest amount in the month as {min, max}, or null while
+    // they need recomputing after a removal (or the month has no rows)
+    public long[] extremes(YearMonth month) {
+        MonthTotals totals = months.get(key(month));
+        if (totals == null || totals.extremesStale) return null;
+        return new long[] {totals.minAmount, totals.maxAmount};
+    }
+    
+    public void setExtremes(YearMonth month, long minAmount, long maxAmount) {
+        MonthTotals totals = months.get(key(month));
+        if (totals == null) return;
+        totals.minAmount = minAmount;
+        totals.maxAmount = maxAmount;
+        totals.extremesStale = false;
+    }
+    
+    // Number of rows dated in the month
+    public int count(YearMonth month) {
+        MonthTotals totals = months.get(key(month));
+        return totals == null ? 0 : totals.count;
+    }
+    
+    private static int key(LocalDate date) {
+        return date.getYear() * 12 + date.getMonthValue() - 1;
+    }
+    
+    private static int key(YearMonth month) {
+        return month.getYear() * 12 + month.getMonthValue() - 1;
+    }
+}
@@ -0,0 +1,151 @@
+package util;
+
+import models.*;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Write-behind persistence: callers queue changes and return immediately,
+// a single writer thread folds each burst of changes into one save.
+// shutdown() drains whatever is still queued before returning.
+public class PersistenceService {
+    // How long the writer waits for more changes before saving a burst
+    private static final long COALESCE_DELAY_MS = 200;
+    
+    private final Thread writer;
+    private final List<String> pendingJournal = new ArrayList<>();
+    private List<Transaction> pendingTransactions;
+    private Set<YearMonth> pendingMonths;
+    // Leading records of pendingJournal already contained in pendingTransactions
+    private int snapshotCovers;
+    // Months changed since the last snapshot; only these partitions get rewritten
+    private Set<YearMonth> dirtyMonths;
+    private List<Category> pendingCategories;
+    private List<Budget> pendingBudgets;
+    private int journalRecords;
+    private boolean shutdown;
+    
+    public PersistenceService() {
+        journalRecords = FileManager.getJournalRecordCount();
+        dirtyMonths = FileManager.getJournalMonths();
+        writer = new Thread(this::run, "persistence-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+    
+    public synchronized void journal(String record, YearMonth... affectedMonths) {
+        pendingJournal.add(record);
+        journalRecords++;
+        for (YearMonth month : affectedMonths) {
+            dirtyMonths.add(month);
+        }
+        notifyAll();
+    }
+    
+    public synchronized boolean needsCompaction() {
+        return journalRecords >= FileManager.COMPACTION_THRESHOLD;
+    }
+    
+    // Only months changed since the last snapshot are rewritten, and changes
+    // are only made to loaded months, so history still on disk is left alone.
+    // The snapshot already contains every queued journal record. Those are
+    // only dropped once it is written; if it fails they are appended to the
+    // journal as usual.
+    public synchronized void saveTransactions(List<Transaction> transactions) {
+        pendingTransactions = new ArrayList<>(transactions);
+        if (pendingMonths == null) pendingMonths = new HashSet<>();
+        pendingMonths.addAll(dirtyMonths);
+        dirtyMonths = new HashSet<>();
+        snapshotCovers = pendingJournal.size();
+        journalRecords = 0;
+        notifyAll();
+    }
+    
+    public synchronized void saveCategories(List<Category> categories) {
+        pendingCategories = new ArrayList<>(categories);
+        notifyAll();
+    }
+    
+    public synchronized void saveBudgets(List<Budget> budgets) {
+        pendingBudgets = new ArrayList<>(budgets);
+        notifyAll();
+    }
+    
+    public void shutdown() {
+        synchronized (this) {
+            shutdown = true;
+            notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private boolean hasPendingWork() {
+        return !pendingJournal.isEmpty() || pendingTransactions != null
+            || pendingCategories != null || pendingBudgets != null;
+    }
+    
+    private void run() {
+        while (true) {
+            List<String> journal;
+            List<Transaction> transactions;
+            Set<YearMonth> months;
+            int covered;
+            List<Category> categories;
+            List<Budget> budgets;
+            
+            synchronized (this) {
+                try {
+                    while (!hasPendingWork() && !shutdown) {
+                        wait();
+                    }
+                    long deadline = System.currentTimeMillis() + COALESCE_DELAY_MS;
+                    long remaining = COALESCE_DELAY_MS;
+                    while (!shutdown && remaining > 0) {
+                        wait(remaining);
+                        remaining = deadline - System.currentTimeMillis();
+                    }
+                } catch (InterruptedException e) {
+                    shutdown = true;
+                }
+                if (!hasPendingWork()) {
+                    if (shutdown) return;
+                    continue;
+                }
+                journal = new ArrayList<>(pendingJournal);
+                transactions = pendingTransactions;
+                months = pendingMonths;
+                covered = snapshotCovers;
+                categories = pendingCategories;
+                budgets = pendingBudgets;
+                pendingJournal.clear();
+                pendingTransactions = null;
+                pendingMonths = null;
+                snapshotCovers = 0;
+                pendingCategories = null;
+                pendingBudgets = null;
+            }
+            
+            // Snapshot first: it deletes the old journal, later records append to a fresh one
+            if (transactions != null) {
+                if (FileManager.saveTransactions(transactions, months)) {
+                    journal = journal.subList(covered, journal.size());
+                } else {
+                    // The journal on disk is still there; keep the months for the next snapshot
+                    synchronized (this) {
+                        dirtyMonths.addAll(months);
+                        journalRecords += covered;
+                    }
+                }
+            }
+            if (!journal.isEmpty()) FileManager.appendJournal(journal);
+            if (categories != null) FileManager.saveCategories(categories);
+            if (budgets != null) FileManager.saveBudgets(budgets);
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Streaming reader for the pipe-delimited data files. Lines are scanned
+// straight from a reused byte buffer and numeric fields are decoded in
+// place, so ids, amounts and dates never go through an intermediate
+// String. Text fields still cost one String each through getString();
+// getSharedString() hands repeated values such as categories and types
+// the same instance. A field that does not parse throws an exception
+// without a stack trace or a copy of the field, so skipping bad lines
+// stays cheap.
+//
+// Text is UTF-8. Files written before the app pinned its charset used the
+// platform default, so a field that is not valid UTF-8 is decoded with that
+// instead; the next save rewrites it as UTF-8.
+public class PipeRecordReader implements Closeable {
+    private static final int MAX_FIELDS = 16;
+    private static final int DAYS_0000_TO_1970 = 719528;
+    
+    private final FileChannel channel;
+    private final boolean ownsChannel;
+    private long filePosition;
+    private final long fileEnd;
+    private ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+    private boolean eof;
+    
+    private final int[] fieldStarts = new int[MAX_FIELDS];
+    private final int[] fieldEnds = new int[MAX_FIELDS];
+    private int fieldCount;
+    
+    // Small cache so repeated category/type names share one String instance
+    private final byte[][] sharedKeys = new byte[256][];
+    private final String[] sharedValues = new String[256];
+    
+    private final CharsetDecoder utf8 = StandardCharsets.UTF_8.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPORT)
+        .onUnmappableCharacter(CodingErrorAction.REPORT);
+    
+    public PipeRecordReader(File file) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.ownsChannel = true;
+        this.filePosition = 0;
+        this.fileEnd = Long.MAX_VALUE;
+        buffer.limit(0);
+    }
+    
+    // Reads only the byte range [start, end) of a shared channel; the range
+    // must begin at a line start. Closing this reader leaves the channel open.
+    public PipeRecordReader(FileChannel channel, long start, long end) {
+        this.channel = channel;
+        this.ownsChannel = false;
+        this.filePosition = start;
+        this.fileEnd = end;
+        buffer.limit(0);
+    }
+    
+    // Advances to the next line, returning false at end of file
+    public boolean next() throws IOException {
+        while (true) {
+            byte[] bytes = buffer.array();
+            int limit = buffer.limit();
+            for (int i = buffer.position(); i < limit; i++) {
+                if (bytes[i] == '\n') {
+                    setLine(buffer.position(), i);
+                    buffer.position(i + 1);
+                    return true;
+                }
+            }
+            if (eof) {
+                if (buffer.position() < limit) {
+                    setLine(buffer.position(), limit);
+                    buffer.position(limit);
+                    return true;
+                }
+                return false;
+            }
+            fill();
+        }
+    }
+    
+    private void fill() throws IOException {
+        buffer.compact();
+        if (!buffer.hasRemaining()) {
+            // A single line is longer than the buffer
+            ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+        long remaining = fileEnd - filePosition;
+        if (remaining < buffer.remaining()) {
+            buffer.limit(buffer.position() + (int) remaining);
+        }
+        // Positional reads so several readers can share one channel
+        int read = remaining > 0 ? channel.read(buffer, filePosition) : -1;
+        if (read < 0) {
+            eof = true;
+        } else {
+            filePosition += read;
+        }
+        buffer.flip();
+    }
+    
+    private void setLine(int start, int end) {
+        byte[] bytes = buffer.array();
+        if (end > start && bytes[end - 1] == '\r') end--;
+        
+        fieldCount = 0;
+        int fieldStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i == end || bytes[i] == '|') {
+                if (fieldCount < MAX_FIELDS) {
+                    fieldStarts[fieldCount] = fieldStart;
+                    fieldEnds[fieldCount] = i;
+                }
+                fieldCount++;
+                fieldStart = i + 1;
+            }
+        }
+        if (start == end) fieldCount = 0;
+    }
+    
+    public int getFieldCount() {
+        return fieldCount;
+    }
+    
+    public boolean fieldEquals(int field, String ascii) {
+        int start = fieldStarts[field];
+        int length = fieldEnds[field] - start;
+        if (length != ascii.length()) return false;
+        byte[] bytes = buffer.array();
+        for (int i = 0; i < length; i++) {
+            if (bytes[start + i] != ascii.charAt(i)) return false;
+        }
+        return true;
+    }
+    
+    public int parseInt(int field) {
+        byte[] bytes = buffer.array();
+        int i = fieldStarts[field];
+        int end = fieldEnds[field];
+        boolean negative = i < end && bytes[i] == '-';
+        if (negative) i++;
+        if (i == end) throw malformed(field);
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) throw malformed(field);
+            value = value * 10 + digit;
+            if (value > Integer.MAX_VALUE + 1L) throw malformed(field);
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) throw malformed(field);
+        return (int) value;
+    }
+    
+    // Decimal amount such as "1500.00" as minor units (paise), rounded half up
+    public long parseMinorUnits(int field) {
+        byte[] bytes = buffer.array();
+        int i = fieldStarts[field];
+        int end = fieldEnds[field];
+        boolean negative = i < end && bytes[i] == '-';
+        if (negative) i++;
+        
+        long units = 0;
+        int digits = 0;
+        for (; i < end && bytes[i] != '.'; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9 || units > Long.MAX_VALUE / 1000) throw malformed(field);
+            units = units * 10 + digit;
+            digits++;
+        }
+        long fraction = 0;
+        int fractionDigits = 0;
+        boolean roundUp = false;
+        if (i < end) {
+            for (i++; i < end; i++) {
+                int digit = bytes[i] - '0';
+                if (digit < 0 || digit > 9) throw malformed(field);
+                if (fractionDigits < 2) {
+                    fraction = fraction * 10 + digit;
+                } else if (fractionDigits == 2) {
+                    roundUp = digit >= 5;
+                }
+                fractionDigits++;
+                digits++;
+            }
+        }
+        if (digits == 0) throw malformed(field);
+        if (fractionDigits == 1) fraction *= 10;
+        long value = units * 100 + fraction + (roundUp ? 1 : 0);
+        return negative ? -value : value;
+    }
+    
+    // ISO date (yyyy-MM-dd) as epoch day, same result as LocalDate.parse(...).toEpochDay()
+    public int parseEpochDay(int field) {
+        byte[] bytes = buffer.array();
+        int s = fieldStarts[field];
+        if (fieldEnds[field] - s != 10 || bytes[s + 4] != '-' || bytes[s + 7] != '-') {
+            throw malformed(field);
+        }
+        int year = digits(bytes, s, 4, field);
+        int month = digits(bytes, s + 5, 2, field);
+        int day = digits(bytes, s + 8, 2, field);
+        boolean leap = (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+        if (month < 1 || month > 12 || day < 1 || day > lengthOfMonth(month, leap)) {
+            throw malformed(field);
+        }
+        
+        long total = 365L * year + (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+        total += (367 * month - 362) / 12;
+        total += day - 1;
+        if (month > 2) {
+            total--;
+            if (!leap) total--;
+        }
+        return (int) (total - DAYS_0000_TO_1970);
+    }
+    
+    private static int lengthOfMonth(int month, boolean leap) {
+        switch (month) {
+            case 2: return leap ? 29 : 28;
+            case 4: case 6: case 9: case 11: return 30;
+            default: return 31;
+        }
+    }
+    
+    private int digits(byte[] bytes, int start, int count, int field) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) throw malformed(field);
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+    
+    public String getString(int field) {
+        byte[] bytes = buffer.array();
+        int start = fieldStarts[field];
+        int length = fieldEnds[field] - start;
+        boolean ascii = true;
+        for (int i = start; i < start + length && ascii; i++) {
+            ascii = bytes[i] >= 0;
+        }
+        if (ascii) return new String(bytes, start, length, StandardCharsets.ISO_8859_1);
+        try {
+            return utf8.decode(ByteBuffer.wrap(bytes, start, length)).toString();
+        } catch (CharacterCodingException e) {
+            return new String(bytes, start, length, Charset.defaultCharset());
+        }
+    }
+    
+    // Like getString, but repeated values (categories, types) reuse the same instance
+    public String getSharedString(int field) {
+        byte[] bytes = buffer.array();
+        int start = fieldStarts[field];
+        int end = fieldEnds[field];
+        int hash = 1;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        int slot = hash & (sharedKeys.length - 1);
+        byte[] key = sharedKeys[slot];
+        if (key != null && Arrays.equals(key, 0, key.length, bytes, start, end)) {
+            return sharedValues[slot];
+        }
+        String value = getString(field);
+        sharedKeys[slot] = Arrays.copyOfRange(bytes, start, end);
+        sharedValues[slot] = value;
+        return value;
+    }
+    
+    private NumberFormatException malformed(int field) {
+        return new MalformedFieldException(field);
+    }
+    
+    // Callers skip the line rather than report it, so the stack is not recorded
+    private static class MalformedFieldException extends NumberFormatException {
+        MalformedFieldException(int field) {
+            super("Malformed field " + field);
+        }
+        
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        if (ownsChannel) channel.close();
+    }
+}
@@ -0,0 +1,84 @@
+package util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Trigram index over transaction descriptions for case-insensitive
+// substring search. Every distinct three-character window of a folded
+// description is posted against its row. A query walks the shortest
+// posting list among its own trigrams, and TransactionStore confirms each
+// candidate against the description itself, so postings may still hold
+// rows that were removed or rewritten since they were indexed.
+public class SearchIndex {
+    private static final int GRAM = 3;
+    
+    private final Map<Long, Postings> postings = new HashMap<>();
+    
+    private static class Postings {
+        int[] rows = new int[4];
+        int size;
+        
+        void add(int row) {
+            if (size == rows.length) rows = Arrays.copyOf(rows, size * 2);
+            rows[size++] = row;
+        }
+    }
+    
+    public void add(int row, String description) {
+        if (description == null || description.length() < GRAM) return;
+        long[] grams = grams(description);
+        Arrays.sort(grams);
+        for (int i = 0; i < grams.length; i++) {
+            if (i > 0 && grams[i] == grams[i - 1]) continue;
+            Postings list = postings.get(grams[i]);
+            if (list == null) {
+                list = new Postings();
+                postings.put(grams[i], list);
+            }
+            list.add(row);
+        }
+    }
+    
+    // Rows that may contain the query, possibly with repeats; null when the
+    // query is too short to narrow anything and every row is a candidate
+    public int[] candidates(String query) {
+        if (query.length() < GRAM) return null;
+        Postings shortest = null;
+        for (long gram : grams(query)) {
+            Postings list = postings.get(gram);
+            if (list == null) return new int[0];
+            if (shortest == null || list.size < shortest.size) shortest = list;
+        }
+        return Arrays.copyOf(shortest.rows, shortest.size);
+    }
+    
+    // Case-insensitive substring test matching the folding used for trigrams
+    public static boolean contains(String text, String query) {
+        if (text == null) return false;
+        if (query.isEmpty()) return true;
+        char first = fold(query.charAt(0));
+        for (int i = 0, last = text.length() - query.length(); i <= last; i++) {
+            if (fold(text.charAt(i)) == first
+                    && text.regionMatches(true, i, query, 0, query.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static long[] grams(String text) {
+        long[] grams = new long[text.length() - GRAM + 1];
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = (long) fold(text.charAt(i)) << 32
+                | (long) fold(text.charAt(i + 1)) << 16
+                | fold(text.charAt(i + 2));
+        }
+        return grams;
+    }
+    
+    // Same equivalence as String.regionMatches with ignoreCase
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+}
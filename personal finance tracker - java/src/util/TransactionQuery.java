@@ -0,0 +1,197 @@
+package util;
+
+import models.CategoryRegistry;
+import models.Transaction;
+import models.TransactionType;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Filter criteria for transactions: type, categories, date range, amount
+// range and search text, each optional. compile() validates the criteria
+// once and returns a Plan that answers the query against a
+// TransactionStore's columns, or tests single transactions for callers
+// holding a plain list.
+public class TransactionQuery {
+    // A date range with fewer rows than size / this is searched row by row
+    // rather than through the text index
+    private static final int TEXT_SCAN_FRACTION = 8;
+    
+    private TransactionType type; // null for any type
+    private final Set<Integer> categoryIds = new HashSet<>(); // empty for any category
+    private LocalDate from; // null leaves the range open
+    private LocalDate to;
+    private long minAmount = Long.MIN_VALUE; // in paise
+    private long maxAmount = Long.MAX_VALUE;
+    private String text = "";
+    
+    public TransactionType getType() { return type; }
+    public void setType(TransactionType type) { this.type = type; }
+    
+    public Set<Integer> getCategoryIds() { return categoryIds; }
+    public void addCategory(String category) { categoryIds.add(CategoryRegistry.idOf(category)); }
+    
+    public LocalDate getFrom() { return from; }
+    public void setFrom(LocalDate from) { this.from = from; }
+    
+    public LocalDate getTo() { return to; }
+    public void setTo(LocalDate to) { this.to = to; }
+    
+    public long getMinAmount() { return minAmount; }
+    public void setMinAmount(long minAmount) { this.minAmount = minAmount; }
+    
+    public long getMaxAmount() { return maxAmount; }
+    public void setMaxAmount(long maxAmount) { this.maxAmount = maxAmount; }
+    
+    public String getText() { return text; }
+    public void setText(String text) { this.text = text == null ? "" : text.trim(); }
+    
+    public Plan compile() {
+        if (from != null && to != null && from.isAfter(to)) {
+            throw new IllegalArgumentException("Date From is after Date To");
+        }
+        if (minAmount > maxAmount) {
+            throw new IllegalArgumentException("Minimum amount is above the maximum");
+        }
+        return new Plan(this);
+    }
+    
+    // A test on one row's columns
+    private interface RowCheck {
+        boolean test(TransactionStore store, int row);
+    }
+    
+    // A compiled query. Type, categories, date range and text each become a
+    // bitmap of rows from the store's indexes and are ANDed together
+    // (categories ORed among themselves); only the amount range, and text
+    // within a narrow date range, are tested row by row. Callers off the
+    // event thread hold the store while executing; interrupting them
+    // cancels the execution with a CancellationException.
+    public static class Plan {
+        private final int typeOrdinal; // -1 for any
+        private final List<Integer> categoryIds; // empty for any
+        private final boolean[] categories; // null for any
+        private final int fromDay;
+        private final int toDay;
+        private final boolean dated;
+        private final long minAmount;
+        private final long maxAmount;
+        private final String text; // null for none
+        
+        private Plan(TransactionQuery query) {
+            typeOrdinal = query.type == null ? -1 : query.type.ordinal();
+            categoryIds = new ArrayList<>(query.categoryIds);
+            if (categoryIds.isEmpty()) {
+                categories = null;
+            } else {
+                categories = new boolean[Collections.max(categoryIds) + 1];
+                for (int id : categoryIds) {
+                    categories[id] = true;
+                }
+            }
+            fromDay = query.from == null ? Integer.MIN_VALUE : (int) query.from.toEpochDay();
+            toDay = query.to == null ? Integer.MAX_VALUE : (int) query.to.toEpochDay();
+            dated = query.from != null || query.to != null;
+            minAmount = query.minAmount;
+            maxAmount = query.maxAmount;
+            text = query.text.isEmpty() ? null : query.text;
+        }
+        
+        // Live rows of the store that match; cardinality() gives the count
+        // without building any transactions
+        public BitSet execute(TransactionStore store) {
+            BitSet rows = null;
+            if (categories != null) {
+                rows = store.rowsInCategories(categoryIds);
+            }
+            if (typeOrdinal >= 0) {
+                if (rows == null) {
+                    rows = (BitSet) store.typeBitmap(typeOrdinal).clone();
+                } else {
+                    rows.and(store.typeBitmap(typeOrdinal));
+                }
+            }
+            if (dated) {
+                rows = and(rows, store.rowSetBetween(fromDay, toDay));
+            }
+            
+            List<RowCheck> checks = new ArrayList<>();
+            if (minAmount != Long.MIN_VALUE || maxAmount != Long.MAX_VALUE) {
+                checks.add((s, row) -> {
+                    long amount = s.amountAt(row);
+                    return amount >= minAmount && amount <= maxAmount;
+                });
+            }
+            if (text != null) {
+                // A narrow date range is cheaper to search row by row
+                if (dated && store.countBetween(fromDay, toDay) < store.size() / TEXT_SCAN_FRACTION) {
+                    boolean[] categoryMatches = categoryMatches(text);
+                    checks.add((s, row) -> SearchIndex.contains(s.descriptionAt(row), text)
+                        || matchesCategory(categoryMatches, s.categoryIdAt(row)));
+                } else {
+                    rows = and(rows, store.search(text));
+                }
+            }
+            if (rows == null) rows = store.liveRows();
+            if (checks.isEmpty()) return rows;
+            int scanned = 0;
+            for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+                TransactionStore.checkCancelled(scanned++);
+                for (RowCheck check : checks) {
+                    if (!check.test(store, row)) {
+                        rows.clear(row);
+                        break;
+                    }
+                }
+            }
+            return rows;
+        }
+        
+        private static BitSet and(BitSet rows, BitSet other) {
+            if (rows == null) return other;
+            rows.and(other);
+            return rows;
+        }
+        
+        // Matching transactions of the store, in row order
+        public List<Transaction> select(TransactionStore store) {
+            return store.select(execute(store));
+        }
+        
+        public boolean matches(Transaction transaction) {
+            if (typeOrdinal >= 0 && transaction.getType().ordinal() != typeOrdinal) return false;
+            if (categories != null && !matchesCategory(categories, transaction.getCategoryId())) return false;
+            long amount = transaction.getAmount();
+            if (amount < minAmount || amount > maxAmount) return false;
+            int day = (int) transaction.getDate().toEpochDay();
+            if (day < fromDay || day > toDay) return false;
+            return text == null
+                || SearchIndex.contains(transaction.getDescription(), text)
+                || SearchIndex.contains(transaction.getCategory(), text);
+        }
+        
+        public List<Transaction> filter(List<Transaction> transactions) {
+            List<Transaction> result = new ArrayList<>();
+            for (Transaction t : transactions) {
+                if (matches(t)) result.add(t);
+            }
+            return result;
+        }
+        
+        private static boolean[] categoryMatches(String text) {
+            boolean[] matches = new boolean[CategoryRegistry.size()];
+            for (int id = 0; id < matches.length; id++) {
+                matches[id] = SearchIndex.contains(CategoryRegistry.nameOf(id), text);
+            }
+            return matches;
+        }
+        
+        private static boolean matchesCategory(boolean[] mask, int categoryId) {
+            return categoryId < mask.length && mask[categoryId];
+        }
+    }
+}
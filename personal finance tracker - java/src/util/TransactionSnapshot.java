@@ -0,0 +1,158 @@
+package util;
+
+import models.CategoryRegistry;
+import models.Transaction;
+import models.TransactionType;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Binary columnar snapshot of the transactions, loaded through a memory-mapped file.
+//
+// Layout (big-endian):
+//   header      magic, version, rowCount, dictionarySize, descriptionBytes
+//   ids         int[rowCount]
+//   types       byte[rowCount]      TransactionType ordinal
+//   amounts     long[rowCount]      minor units (paise)
+//   dates       int[rowCount]       epoch day
+//   categories  int[rowCount]       index into the dictionary
+//   descOffsets int[rowCount + 1]   offsets into the description blob
+//   dictionary  dictionarySize x (short length, UTF-8 bytes)
+//   blob        descriptionBytes of UTF-8 text
+public class TransactionSnapshot {
+    private static final int MAGIC = 0x50465442; // "PFTB"
+    // Version 1 stored types as indexes into the category dictionary
+    private static final int VERSION = 2;
+    
+    private static final TransactionType[] TYPES = TransactionType.values();
+    
+    public static void write(List<Transaction> transactions, File file) throws IOException {
+        int rows = transactions.size();
+        List<String> dictionary = new ArrayList<>();
+        Map<String, Integer> dictionaryIndex = new HashMap<>();
+        byte[] types = new byte[rows];
+        int[] categories = new int[rows];
+        int[] descOffsets = new int[rows + 1];
+        ByteArrayOutputStream blob = new ByteArrayOutputStream();
+        
+        for (int i = 0; i < rows; i++) {
+            Transaction t = transactions.get(i);
+            types[i] = (byte) t.getType().ordinal();
+            categories[i] = encode(t.getCategory(), dictionary, dictionaryIndex);
+            byte[] description = t.getDescription().getBytes(StandardCharsets.UTF_8);
+            blob.write(description, 0, description.length);
+            descOffsets[i + 1] = blob.size();
+        }
+        
+        try (FileOutputStream fileOut = new FileOutputStream(file);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut, 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(rows);
+            out.writeInt(dictionary.size());
+            out.writeInt(blob.size());
+            for (Transaction t : transactions) out.writeInt(t.getId());
+            out.write(types);
+            for (Transaction t : transactions) out.writeLong(t.getAmount());
+            for (Transaction t : transactions) out.writeInt((int) t.getDate().toEpochDay());
+            for (int category : categories) out.writeInt(category);
+            for (int offset : descOffsets) out.writeInt(offset);
+            for (String value : dictionary) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                out.writeShort(bytes.length);
+                out.write(bytes);
+            }
+            blob.writeTo(out);
+            out.flush();
+            // On disk before the caller renames it over the previous snapshot
+            fileOut.getFD().sync();
+        }
+    }
+    
+    private static int encode(String value, List<String> dictionary, Map<String, Integer> dictionaryIndex) {
+        Integer index = dictionaryIndex.get(value);
+        if (index == null) {
+            index = dictionary.size();
+            dictionary.add(value);
+            dictionaryIndex.put(value, index);
+        }
+        return index;
+    }
+    
+    public static List<Transaction> read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Unrecognized snapshot format: " + file.getName());
+            }
+            int rows = buffer.getInt();
+            int dictionarySize = buffer.getInt();
+            int descriptionBytes = buffer.getInt();
+            
+            int idsAt = buffer.position();
+            int typesAt = idsAt + rows * 4;
+            int amountsAt = typesAt + rows;
+            int datesAt = amountsAt + rows * 8;
+            int categoriesAt = datesAt + rows * 4;
+            int offsetsAt = categoriesAt + rows * 4;
+            int dictionaryAt = offsetsAt + (rows + 1) * 4;
+            
+            IntBuffer ids = column(buffer, idsAt).asIntBuffer();
+            LongBuffer amounts = column(buffer, amountsAt).asLongBuffer();
+            IntBuffer dates = column(buffer, datesAt).asIntBuffer();
+            IntBuffer categories = column(buffer, categoriesAt).asIntBuffer();
+            IntBuffer offsets = column(buffer, offsetsAt).asIntBuffer();
+            
+            buffer.position(dictionaryAt);
+            String[] dictionary = new String[dictionarySize];
+            for (int i = 0; i < dictionarySize; i++) {
+                byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(bytes);
+                dictionary[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            byte[] blob = new byte[descriptionBytes];
+            buffer.get(blob);
+            
+            // Categories are resolved once per dictionary entry, not per row
+            int[] categoryIds = new int[dictionarySize];
+            for (int i = 0; i < dictionarySize; i++) {
+                categoryIds[i] = -1;
+            }
+            
+            List<Transaction> transactions = new ArrayList<>(rows);
+            for (int i = 0; i < rows; i++) {
+                int start = offsets.get(i);
+                int type = buffer.get(typesAt + i);
+                if (type < 0 || type >= TYPES.length) {
+                    throw new IOException("Corrupt snapshot, unknown type " + type + ": " + file.getName());
+                }
+                int category = categories.get(i);
+                if (categoryIds[category] < 0) categoryIds[category] = CategoryRegistry.idOf(dictionary[category]);
+                transactions.add(new Transaction(
+                    ids.get(i),
+                    TYPES[type],
+                    amounts.get(i),
+                    categoryIds[category],
+                    new String(blob, start, offsets.get(i + 1) - start, StandardCharsets.UTF_8),
+                    LocalDate.ofEpochDay(dates.get(i))));
+            }
+            return transactions;
+        }
+    }
+    
+    private static ByteBuffer column(ByteBuffer buffer, int position) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(position);
+        return view.slice();
+    }
+}
@@ -0,0 +1,658 @@
+package util;
+
+import models.CategoryRegistry;
+import models.Transaction;
+import models.TransactionType;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.CancellationException;
+
+// In-memory transactions kept as parallel primitive columns instead of one
+// object per row. Types are stored as enum ordinals, categories as
+// CategoryRegistry ids and dates as epoch days. Transaction objects are only
+// built when a row is read through get() or asList(); aggregations are
+// answered by a MonthlyRollup and a BalanceIndex, date ranges by a
+// date-ordered row index, ids by an IdIndex, text search by a SearchIndex
+// and type or category filters by per-value row bitmaps, all kept in step
+// with every change.
+//
+// Row numbers are stable until compaction: remove() leaves a tombstone
+// instead of shifting the columns, and tombstones are squeezed out in one
+// pass once they make up a quarter of the rows. Look rows up again with
+// rowOfId() after any change rather than holding on to them.
+//
+// The store is not thread-safe by itself: FinanceRepository owns it and
+// keeps changes out while readers run. Concurrent readers may still fill in
+// the search index, the rollup's extremes and the running balances on first
+// use, so those synchronize on the store.
+public class TransactionStore {
+    // Capacity grows by at least this many rows at a time
+    private static final int CHUNK_SIZE = 4096;
+    // Removals tolerated before compaction, at minimum
+    private static final int MIN_TOMBSTONES_BEFORE_COMPACTION = 1024;
+    // Rows a long scan covers between checks for cancellation
+    private static final int CANCEL_CHECK_ROWS = 4096;
+    
+    private int rowCount; // rows in the columns, including tombstones
+    private int size; // live rows
+    private int[] ids = new int[0];
+    private long[] amounts = new long[0]; // in paise
+    private int[] epochDays = new int[0];
+    private byte[] types = new byte[0]; // TransactionType ordinal
+    private int[] categoryIds = new int[0];
+    private String[] descriptions = new String[0];
+    private boolean[] removed = new boolean[0];
+    private int tombstones;
+    
+    private static final TransactionType[] TYPES = TransactionType.values();
+    
+    private final MonthlyRollup rollup = new MonthlyRollup();
+    private final BalanceIndex balances = new BalanceIndex();
+    // Live rows of each type and of each category id; filters combine
+    // these with AND/OR instead of testing rows one at a time
+    private final BitSet[] rowsByType = new BitSet[TYPES.length];
+    private BitSet[] rowsByCategory = new BitSet[0];
+    private final IdIndex idIndex = new IdIndex();
+    // Built on the first search, then maintained; dropped when rows are
+    // renumbered or enough rewrites have left it holding stale postings
+    private SearchIndex searchIndex;
+    private int rewrites;
+    // Running balance after each row, by row number; built on first use and
+    // dropped by any change
+    private long[] runningBalances;
+    
+    // Row numbers ordered by (epoch day, row); the first rowCount entries are
+    // used and tombstones stay in place until compaction
+    private int[] byDate = new int[0];
+    
+    // Bumped whenever rows are removed or renumbered, which invalidates the
+    // positions cached by asList() views
+    private int layoutVersion;
+    
+    public TransactionStore() {
+        for (int i = 0; i < rowsByType.length; i++) {
+            rowsByType[i] = new BitSet();
+        }
+    }
+    
+    public TransactionStore(List<Transaction> transactions) {
+        this();
+        addAll(transactions);
+    }
+    
+    // Number of live transactions
+    public int size() {
+        return size;
+    }
+    
+    public Transaction get(int row) {
+        checkRow(row);
+        return new Transaction(ids[row], TYPES[types[row]], amounts[row],
+            categoryIds[row], descriptions[row],
+            LocalDate.ofEpochDay(epochDays[row]));
+    }
+    
+    public MonthlyRollup getRollup() {
+        return rollup;
+    }
+    
+    public BalanceIndex getBalanceIndex() {
+        return balances;
+    }
+    
+    public int getId(int row) {
+        checkRow(row);
+        return ids[row];
+    }
+    
+    // Single fields of a row, for callers that would otherwise build a
+    // Transaction just to read one of them
+    public TransactionType getType(int row) {
+        checkRow(row);
+        return TYPES[types[row]];
+    }
+    
+    public long getAmount(int row) {
+        checkRow(row);
+        return amounts[row];
+    }
+    
+    public String getCategory(int row) {
+        checkRow(row);
+        return CategoryRegistry.nameOf(categoryIds[row]);
+    }
+    
+    public String getDescription(int row) {
+        checkRow(row);
+        return descriptions[row];
+    }
+    
+    public int getEpochDay(int row) {
+        checkRow(row);
+        return epochDays[row];
+    }
+    
+    // Row holding the id, or -1
+    public int rowOfId(int id) {
+        return idIndex.get(id);
+    }
+    
+    public Transaction findById(int id) {
+        int row = idIndex.get(id);
+        return row < 0 ? null : get(row);
+    }
+    
+    public void add(Transaction transaction) {
+        addAll(List.of(transaction));
+    }
+    
+    // Appends the transactions after every existing row
+    public void addAll(List<Transaction> transactions) {
+        int count = transactions.size();
+        ensureCapacity(rowCount + count);
+        for (int i = 0; i < count; i++) {
+            write(rowCount + i, transactions.get(i));
+            idIndex.put(ids[rowCount + i], rowCount + i);
+            if (searchIndex != null) searchIndex.add(rowCount + i, descriptions[rowCount + i]);
+        }
+        mergeIntoDateIndex(rowCount, rowCount, count);
+        rowCount += count;
+        size += count;
+    }
+    
+    // Inserts the transactions before every existing row, keeping their
+    // order; used when older history is loaded. Renumbers every row.
+    public void prependAll(List<Transaction> transactions) {
+        int count = transactions.size();
+        ensureCapacity(rowCount + count);
+        System.arraycopy(ids, 0, ids, count, rowCount);
+        System.arraycopy(amounts, 0, amounts, count, rowCount);
+        System.arraycopy(epochDays, 0, epochDays, count, rowCount);
+        System.arraycopy(types, 0, types, count, rowCount);
+        System.arraycopy(categoryIds, 0, categoryIds, count, rowCount);
+        System.arraycopy(descriptions, 0, descriptions, count, rowCount);
+        System.arraycopy(removed, 0, removed, count, rowCount);
+        for (int i = 0; i < count; i++) {
+            removed[i] = false;
+            write(i, transactions.get(i));
+        }
+        for (int i = 0; i < rowCount; i++) {
+            byDate[i] += count;
+        }
+        mergeIntoDateIndex(rowCount, 0, count);
+        rowCount += count;
+        size += count;
+        rebuildRowIndexes();
+        searchIndex = null;
+        layoutVersion++;
+    }
+    
+    public void set(int row, Transaction transaction) {
+        checkRow(row);
+        removeFromAggregates(row);
+        // The row keeps its number, only its place in date order moves
+        removeFromDateIndex(rowCount, row);
+        if (ids[row] != transaction.getId()) idIndex.remove(ids[row]);
+        write(row, transaction);
+        idIndex.put(ids[row], row);
+        mergeIntoDateIndex(rowCount - 1, row, 1);
+        if (searchIndex != null) {
+            searchIndex.add(row, descriptions[row]);
+            if (++rewrites >= Math.max(MIN_TOMBSTONES_BEFORE_COMPACTION, rowCount / 4)) {
+                searchIndex = null;
+            }
+        }
+    }
+    
+    public void remove(int row) {
+        checkRow(row);
+        removeFromAggregates(row);
+        idIndex.remove(ids[row]);
+        removed[row] = true;
+        descriptions[row] = null;
+        tombstones++;
+        size--;
+        layoutVersion++;
+        if (tombstones >= Math.max(MIN_TOMBSTONES_BEFORE_COMPACTION, rowCount / 4)) {
+            compact();
+        }
+    }
+    
+    // Squeezes out tombstones, renumbering the remaining rows in order
+    private void compact() {
+        int[] newRow = new int[rowCount];
+        int next = 0;
+        for (int row = 0; row < rowCount; row++) {
+            if (removed[row]) {
+                newRow[row] = -1;
+                continue;
+            }
+            newRow[row] = next;
+            ids[next] = ids[row];
+            amounts[next] = amounts[row];
+            epochDays[next] = epochDays[row];
+            types[next] = types[row];
+            categoryIds[next] = categoryIds[row];
+            descriptions[next] = descriptions[row];
+            next++;
+        }
+        // Renumbering keeps relative row order, so byDate stays sorted
+        int kept = 0;
+        for (int i = 0; i < rowCount; i++) {
+            int row = newRow[byDate[i]];
+            if (row >= 0) byDate[kept++] = row;
+        }
+        Arrays.fill(descriptions, next, rowCount, null);
+        Arrays.fill(removed, 0, rowCount, false);
+        rowCount = next;
+        tombstones = 0;
+        rebuildRowIndexes();
+        searchIndex = null;
+        layoutVersion++;
+    }
+    
+    // Rebuilds the indexes keyed by row number after rows are renumbered
+    private void rebuildRowIndexes() {
+        idIndex.clear();
+        for (BitSet rows : rowsByType) {
+            rows.clear();
+        }
+        for (BitSet rows : rowsByCategory) {
+            if (rows != null) rows.clear();
+        }
+        for (int row = 0; row < rowCount; row++) {
+            if (removed[row]) continue;
+            idIndex.put(ids[row], row);
+            setRowBits(row, true);
+        }
+    }
+    
+    private void setRowBits(int row, boolean live) {
+        rowsByType[types[row]].set(row, live);
+        int categoryId = categoryIds[row];
+        if (categoryId >= rowsByCategory.length) {
+            rowsByCategory = Arrays.copyOf(rowsByCategory,
+                Math.max(categoryId + 1, CategoryRegistry.size()));
+        }
+        if (rowsByCategory[categoryId] == null) rowsByCategory[categoryId] = new BitSet();
+        rowsByCategory[categoryId].set(row, live);
+    }
+    
+    // Smallest and largest amount dated in the month as {min, max}; rescans
+    // the month only when a removal has made the rollup's values stale
+    public synchronized long[] extremes(YearMonth month) {
+        long[] extremes = rollup.extremes(month);
+        if (extremes != null || rollup.count(month) == 0) return extremes;
+        int fromDay = (int) month.atDay(1).toEpochDay();
+        int toDay = (int) month.atEndOfMonth().toEpochDay();
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = firstOnOrAfter(fromDay), end = firstOnOrAfter(toDay + 1); i < end; i++) {
+            int row = byDate[i];
+            if (removed[row]) continue;
+            min = Math.min(min, amounts[row]);
+            max = Math.max(max, amounts[row]);
+        }
+        rollup.setExtremes(month, min, max);
+        return new long[] {min, max};
+    }
+    
+    // Running balance after the row: everything dated before its day, plus
+    // the rows of its own day up to and including it, in row order. The
+    // first call after a change walks the date index once and keeps every
+    // row's balance, so sorting a table by this column stays O(1) per
+    // comparison. The kept array must not come from a half-applied change:
+    // call this under the repository's read lock, not an optimistic read.
+    public synchronized long runningBalanceAt(int row) {
+        checkRow(row);
+        if (runningBalances == null) {
+            long[] running = new long[rowCount];
+            long balance = 0;
+            for (int i = 0; i < rowCount; i++) {
+                int other = byDate[i];
+                if (removed[other]) continue;
+                balance += types[other] == TransactionType.INCOME.ordinal() ? amounts[other] : -amounts[other];
+                running[other] = balance;
+            }
+            runningBalances = running;
+        }
+        return runningBalances[row];
+    }
+    
+    // Live rows dated within [fromDay, toDay], in row order
+    public int[] rowsBetween(int fromDay, int toDay) {
+        int start = firstOnOrAfter(fromDay);
+        int end = toDay == Integer.MAX_VALUE ? rowCount : firstOnOrAfter(toDay + 1);
+        if (end <= start) return new int[0];
+        int[] rows = Arrays.copyOfRange(byDate, start, end);
+        if (tombstones > 0) {
+            int kept = 0;
+            for (int row : rows) {
+                if (!removed[row]) rows[kept++] = row;
+            }
+            rows = Arrays.copyOf(rows, kept);
+        }
+        Arrays.sort(rows);
+        return rows;
+    }
+    
+    public BitSet rowSetBetween(int fromDay, int toDay) {
+        BitSet rows = new BitSet(rowCount);
+        int end = toDay == Integer.MAX_VALUE ? rowCount : firstOnOrAfter(toDay + 1);
+        for (int i = firstOnOrAfter(fromDay); i < end; i++) {
+            if (!removed[byDate[i]]) rows.set(byDate[i]);
+        }
+        return rows;
+    }
+    
+    // Live rows whose description or category contains the text, ignoring
+    // case. Categories are few, so their names are matched directly;
+    // descriptions go through the trigram index.
+    public synchronized BitSet search(String text) {
+        BitSet rows = new BitSet(rowCount);
+        boolean[] categoryMatches = new boolean[CategoryRegistry.size()];
+        boolean anyCategory = false;
+        for (int id = 0; id < categoryMatches.length; id++) {
+            categoryMatches[id] = SearchIndex.contains(CategoryRegistry.nameOf(id), text);
+            anyCategory |= categoryMatches[id];
+        }
+        if (anyCategory) {
+            for (int row = 0; row < rowCount; row++) {
+                checkCancelled(row);
+                int categoryId = categoryIds[row];
+                if (categoryId < categoryMatches.length && categoryMatches[categoryId] && !removed[row]) {
+                    rows.set(row);
+                }
+            }
+        }
+        
+        if (searchIndex == null) buildSearchIndex();
+        int[] candidates = searchIndex.candidates(text);
+        if (candidates == null) {
+            for (int row = 0; row < rowCount; row++) {
+                checkCancelled(row);
+                if (!removed[row] && SearchIndex.contains(descriptions[row], text)) rows.set(row);
+            }
+        } else {
+            for (int i = 0; i < candidates.length; i++) {
+                checkCancelled(i);
+                int row = candidates[i];
+                if (!removed[row] && !rows.get(row) && SearchIndex.contains(descriptions[row], text)) {
+                    rows.set(row);
+                }
+            }
+        }
+        return rows;
+    }
+    
+    // Only kept once complete, so a cancelled build leaves no partial index
+    private void buildSearchIndex() {
+        SearchIndex index = new SearchIndex();
+        for (int row = 0; row < rowCount; row++) {
+            checkCancelled(row);
+            if (!removed[row]) index.add(row, descriptions[row]);
+        }
+        searchIndex = index;
+        rewrites = 0;
+    }
+    
+    // Long scans run on worker threads holding the repository's read lock,
+    // and every change waits for them. A worker cancelled with an interrupt
+    // stops at the next check and gives the lock back instead of finishing.
+    static void checkCancelled(int scanned) {
+        if (scanned % CANCEL_CHECK_ROWS == 0 && Thread.currentThread().isInterrupted()) {
+            throw new CancellationException();
+        }
+    }
+    
+    // Read-only view of the given rows, in row order
+    public List<Transaction> select(BitSet rows) {
+        return new RowList(rows.stream().toArray());
+    }
+    
+    // Read-only view of the rows dated within [fromDay, toDay] at the time of
+    // the call, in row order
+    public List<Transaction> between(int fromDay, int toDay) {
+        return new RowList(rowsBetween(fromDay, toDay));
+    }
+    
+    public int countBetween(int fromDay, int toDay) {
+        int start = firstOnOrAfter(fromDay);
+        int end = toDay == Integer.MAX_VALUE ? rowCount : firstOnOrAfter(toDay + 1);
+        if (tombstones == 0) return Math.max(0, end - start);
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            if (!removed[byDate[i]]) count++;
+        }
+        return count;
+    }
+    
+    // Position in byDate of the first row dated on or after the day
+    private int firstOnOrAfter(int day) {
+        int low = 0;
+        int high = rowCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (epochDays[byDate[mid]] < day) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    // Position in byDate of the row, found through its current date
+    private int datePosition(int row) {
+        long key = dateKey(row);
+        int low = 0;
+        int high = rowCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midKey = dateKey(byDate[mid]);
+            if (midKey < key) {
+                low = mid + 1;
+            } else if (midKey > key) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        throw new IllegalStateException("Row " + row + " missing from date index");
+    }
+    
+    private long dateKey(int row) {
+        return ((long) epochDays[row] << 32) | row;
+    }
+    
+    // The helpers below work on the first 'indexed' entries of byDate, which
+    // differs from rowCount while a change is half applied
+    
+    private void removeFromDateIndex(int indexed, int row) {
+        int position = datePosition(row);
+        System.arraycopy(byDate, position + 1, byDate, position, indexed - position - 1);
+    }
+    
+    // Merges rows [firstRow, firstRow + count) into the indexed entries,
+    // filling from the back so only entries after the insertion points move
+    private void mergeIntoDateIndex(int indexed, int firstRow, int count) {
+        long[] added = new long[count];
+        for (int i = 0; i < count; i++) {
+            added[i] = dateKey(firstRow + i);
+        }
+        Arrays.sort(added);
+        int i = indexed - 1;
+        int j = count - 1;
+        for (int k = indexed + count - 1; j >= 0; k--) {
+            if (i >= 0 && dateKey(byDate[i]) > added[j]) {
+                byDate[k] = byDate[i--];
+            } else {
+                byDate[k] = (int) added[j--];
+            }
+        }
+    }
+    
+    // Read-only list of the live transactions in row order; each get() builds
+    // a fresh Transaction
+    public List<Transaction> asList() {
+        return new RowList(null);
+    }
+    
+    public boolean containsCategory(String category) {
+        int categoryId = CategoryRegistry.find(category);
+        if (categoryId < 0) return false;
+        return categoryId < rowsByCategory.length && rowsByCategory[categoryId] != null
+            && !rowsByCategory[categoryId].isEmpty();
+    }
+    
+    private void write(int row, Transaction transaction) {
+        ids[row] = transaction.getId();
+        amounts[row] = transaction.getAmount();
+        epochDays[row] = (int) transaction.getDate().toEpochDay();
+        types[row] = (byte) transaction.getType().ordinal();
+        categoryIds[row] = transaction.getCategoryId();
+        descriptions[row] = transaction.getDescription();
+        rollup.add(epochDays[row], transaction.getType(), categoryIds[row], amounts[row]);
+        balances.add(epochDays[row], transaction.getType(), amounts[row]);
+        setRowBits(row, true);
+        runningBalances = null;
+    }
+    
+    private void removeFromAggregates(int row) {
+        rollup.remove(epochDays[row], TYPES[types[row]], categoryIds[row], amounts[row]);
+        balances.remove(epochDays[row], TYPES[types[row]], amounts[row]);
+        setRowBits(row, false);
+        runningBalances = null;
+    }
+    
+    private void ensureCapacity(int required) {
+        if (required <= ids.length) return;
+        int capacity = Math.max(required, ids.length + Math.max(CHUNK_SIZE, ids.length / 2));
+        ids = Arrays.copyOf(ids, capacity);
+        amounts = Arrays.copyOf(amounts, capacity);
+        epochDays = Arrays.copyOf(epochDays, capacity);
+        types = Arrays.copyOf(types, capacity);
+        categoryIds = Arrays.copyOf(categoryIds, capacity);
+        descriptions = Arrays.copyOf(descriptions, capacity);
+        removed = Arrays.copyOf(removed, capacity);
+        byDate = Arrays.copyOf(byDate, capacity);
+    }
+    
+    // Every live row has exactly one type, so the type bitmaps cover them
+    public BitSet liveRows() {
+        BitSet rows = new BitSet(rowCount);
+        for (BitSet ofType : rowsByType) {
+            rows.or(ofType);
+        }
+        return rows;
+    }
+    
+    // Ids of the live rows, in row order; unlike row numbers they stay
+    // valid after the store changes
+    public int[] liveIds() {
+        int[] live = new int[size];
+        int count = 0;
+        for (int row = 0; row < rowCount; row++) {
+            if (!removed[row]) live[count++] = ids[row];
+        }
+        return live;
+    }
+    
+    public BitSet rowsOfType(TransactionType type) {
+        return (BitSet) rowsByType[type.ordinal()].clone();
+    }
+    
+    public BitSet rowsInCategories(Collection<Integer> categoryIds) {
+        BitSet rows = new BitSet(rowCount);
+        for (int categoryId : categoryIds) {
+            if (categoryId >= 0 && categoryId < rowsByCategory.length && rowsByCategory[categoryId] != null) {
+                rows.or(rowsByCategory[categoryId]);
+            }
+        }
+        return rows;
+    }
+    
+    // Shared bitmap, for ANDing into a result without a copy
+    BitSet typeBitmap(int typeOrdinal) {
+        return rowsByType[typeOrdinal];
+    }
+    
+    // Column reads for TransactionQuery plans, which test rows without
+    // building Transaction objects
+    
+    int categoryIdAt(int row) {
+        return categoryIds[row];
+    }
+    
+    long amountAt(int row) {
+        return amounts[row];
+    }
+    
+    String descriptionAt(int row) {
+        return descriptions[row];
+    }
+    
+    private void checkRow(int row) {
+        if (row < 0 || row >= rowCount || removed[row]) {
+            throw new IndexOutOfBoundsException("No live row " + row);
+        }
+    }
+    
+    private class RowList extends AbstractList<Transaction> implements RandomAccess {
+        private final int[] rows; // null for every live row
+        // Last position resolved when rows is null, so sequential reads skip
+        // tombstones in O(1) each
+        private int cursorIndex;
+        private int cursorRow = -1;
+        private int cursorVersion;
+        
+        RowList(int[] rows) {
+            this.rows = rows;
+        }
+        
+        @Override
+        public Transaction get(int index) {
+            if (rows == null) return TransactionStore.this.get(rowAt(index));
+            return TransactionStore.this.get(rows[index]);
+        }
+        
+        // Row of the index-th live transaction
+        private int rowAt(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            if (tombstones == 0) return index;
+            // Restart from the front when that is closer than the cursor
+            if (cursorRow < 0 || cursorVersion != layoutVersion || index < cursorIndex - index) {
+                cursorIndex = 0;
+                cursorRow = 0;
+                cursorVersion = layoutVersion;
+                while (removed[cursorRow]) cursorRow++;
+            }
+            while (cursorIndex < index) {
+                do {
+                    cursorRow++;
+                } while (removed[cursorRow]);
+                cursorIndex++;
+            }
+            while (cursorIndex > index) {
+                do {
+                    cursorRow--;
+                } while (removed[cursorRow]);
+                cursorIndex--;
+            }
+            return cursorRow;
+        }
+        
+        @Override
+        public int size() {
+            return rows == null ? size : rows.length;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package util;
+
+import java.util.Map;
+
+// Income, expense and amount statistics for a set of transactions,
+// computed together so a report needs a single pass (or rollup lookup).
+// Amounts are in paise; min, max and mean are over all transaction amounts.
+public class TransactionSummary {
+    private final long income;
+    private final long expenses;
+    private final int count;
+    private final long minAmount;
+    private final long maxAmount;
+    private final Map<String, Long> expensesByCategory;
+    
+    public TransactionSummary(long income, long expenses, int count, long minAmount, long maxAmount,
+                              Map<String, Long> expensesByCategory) {
+        this.income = income;
+        this.expenses = expenses;
+        this.count = count;
+        this.minAmount = minAmount;
+        this.maxAmount = maxAmount;
+        this.expensesByCategory = expensesByCategory;
+    }
+    
+    public long getIncome() { return income; }
+    public long getExpenses() { return expenses; }
+    public long getBalance() { return income - expenses; }
+    public int getCount() { return count; }
+    
+    // Zero when there are no transactions
+    public long getMinAmount() { return count == 0 ? 0 : minAmount; }
+    public long getMaxAmount() { return count == 0 ? 0 : maxAmount; }
+    public long getMeanAmount() {
+        return count == 0 ? 0 : Math.round((double) (income + expenses) / count);
+    }
+    
+    public Map<String, Long> getExpensesByCategory() { return expensesByCategory; }
+}
@@ -0,0 +1,80 @@
+package models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Hammers TransactionIds from several threads at once: most threads take
+// ids with next(), some also move the floor up with reserveThrough() the
+// way the loader does, and some build Transactions. Fails unless every id
+// handed out is unique and every id taken after a reservation returned is
+// above the reserved one.
+//
+// Run from the project directory:
+//   javac -d out src/*/*.java test/models/TransactionIdsStressTest.java
+//   java -cp out models.TransactionIdsStressTest [threads] [idsPerThread]
+public class TransactionIdsStressTest {
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int perThread = args.length > 1 ? Integer.parseInt(args[1]) : 500_000;
+        int[][] taken = new int[threads][perThread];
+        AtomicInteger reservedAbove = new AtomicInteger();
+        List<Throwable> failures = new ArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int worker = t;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < perThread; i++) {
+                        if (worker % 4 == 1 && random.nextInt(1000) == 0) {
+                            // A loader reporting the largest id it read from disk
+                            int stored = reservedAbove.get() + random.nextInt(1000);
+                            TransactionIds.reserveThrough(stored);
+                            reservedAbove.accumulateAndGet(stored, Math::max);
+                            int next = TransactionIds.next();
+                            if (next <= stored) {
+                                throw new AssertionError("Id " + next + " not above reserved " + stored);
+                            }
+                            taken[worker][i] = next;
+                        } else if (worker % 4 == 2) {
+                            taken[worker][i] = new Transaction(TransactionType.EXPENSE, 100, "Food", "stress", null).getId();
+                        } else {
+                            taken[worker][i] = TransactionIds.next();
+                        }
+                    }
+                } catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            }, "ids-" + t);
+            workers.add(thread);
+            thread.start();
+        }
+        
+        long started = System.nanoTime();
+        start.countDown();
+        for (Thread thread : workers) {
+            thread.join();
+        }
+        long millis = (System.nanoTime() - started) / 1_000_000;
+        if (!failures.isEmpty()) throw new AssertionError("Worker failed", failures.get(0));
+        
+        int[] all = new int[threads * perThread];
+        for (int t = 0; t < threads; t++) {
+            System.arraycopy(taken[t], 0, all, t * perThread, perThread);
+        }
+        Arrays.sort(all);
+        for (int i = 1; i < all.length; i++) {
+            if (all[i] == all[i - 1]) throw new AssertionError("Duplicate id " + all[i]);
+        }
+        System.out.printf("%,d ids from %d threads in %,d ms, all unique%n", all.length, threads, millis);
+    }
+}
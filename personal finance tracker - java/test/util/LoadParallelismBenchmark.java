@@ -0,0 +1,83 @@
+package util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import models.Transaction;
+
+// Load time of one large transaction file parsed on a single thread
+// against the same file split into chunks across worker threads. The file
+// is well above two chunks' worth, so the parallel path is really taken,
+// and both loads must return the same rows in the same order.
+//
+// Run from the project directory on a multi-core machine:
+//   javac -d out src/*/*.java test/util/LoadParallelismBenchmark.java
+//   java -cp out util.LoadParallelismBenchmark [rows] [threads] [rounds]
+public class LoadParallelismBenchmark {
+    private static final String[] TYPES = {"Income", "Expense"};
+    private static final String[] CATEGORIES = {"Food", "Transport", "Bills", "Salary", "Shopping", "Health"};
+    
+    public static void main(String[] args) throws IOException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        File file = File.createTempFile("transactions", ".txt");
+        file.deleteOnExit();
+        writeRows(file, rows);
+        System.out.printf("%,d rows, %,d bytes, %d threads on %d available processors%n",
+            rows, file.length(), threads, Runtime.getRuntime().availableProcessors());
+        
+        for (int round = 1; round <= rounds; round++) {
+            FileManager.setLoadParallelism(1);
+            List<Transaction> serial = new ArrayList<>(rows);
+            long start = System.nanoTime();
+            int serialMaxId = FileManager.readTransactionFile(file, serial);
+            long serialMillis = (System.nanoTime() - start) / 1_000_000;
+            
+            FileManager.setLoadParallelism(threads);
+            List<Transaction> parallel = new ArrayList<>(rows);
+            start = System.nanoTime();
+            int parallelMaxId = FileManager.readTransactionFile(file, parallel);
+            long parallelMillis = (System.nanoTime() - start) / 1_000_000;
+            
+            check(serial, serialMaxId, parallel, parallelMaxId);
+            System.out.printf("round %d: 1 thread %,d ms, %d threads %,d ms (%.2fx)%n",
+                round, serialMillis, threads, parallelMillis, (double) serialMillis / Math.max(1, parallelMillis));
+        }
+    }
+    
+    private static void check(List<Transaction> serial, int serialMaxId,
+                              List<Transaction> parallel, int parallelMaxId) {
+        if (serialMaxId != parallelMaxId) {
+            throw new AssertionError("Max ids differ: " + serialMaxId + " vs " + parallelMaxId);
+        }
+        if (serial.size() != parallel.size()) {
+            throw new AssertionError("Row counts differ: " + serial.size() + " vs " + parallel.size());
+        }
+        for (int i = 0; i < serial.size(); i++) {
+            if (serial.get(i).getId() != parallel.get(i).getId()) {
+                throw new AssertionError("Rows out of order at " + i);
+            }
+        }
+    }
+    
+    private static void writeRows(File file, int rows) throws IOException {
+        Random random = new Random(42);
+        LocalDate first = LocalDate.of(2015, 1, 1);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file, StandardCharsets.UTF_8))) {
+            for (int id = 1; id <= rows; id++) {
+                writer.write(id + "|" + TYPES[random.nextInt(TYPES.length)] + "|"
+                    + random.nextInt(100000) + "." + String.format("%02d", random.nextInt(100)) + "|"
+                    + CATEGORIES[random.nextInt(CATEGORIES.length)] + "|Purchase " + random.nextInt(1000) + "|"
+                    + first.plusDays(random.nextInt(4000)));
+                writer.newLine();
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Random;
+
+// Throughput of PipeRecordReader against the line-by-line parsing it
+// replaced (readLine, split, parseInt, parseDouble, LocalDate.parse) on a
+// generated transaction file. Both paths decode every field of every line
+// and must agree on the checksum.
+//
+// Run from the project directory:
+//   javac -d out src/*/*.java test/util/PipeRecordReaderBenchmark.java
+//   java -cp out util.PipeRecordReaderBenchmark [rows] [rounds]
+public class PipeRecordReaderBenchmark {
+    private static final String[] TYPES = {"Income", "Expense"};
+    private static final String[] CATEGORIES = {"Food", "Transport", "Bills", "Salary", "Shopping", "Health"};
+    
+    public static void main(String[] args) throws IOException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        File file = File.createTempFile("transactions", ".txt");
+        file.deleteOnExit();
+        writeRows(file, rows);
+        System.out.printf("%,d rows, %,d bytes%n", rows, file.length());
+        
+        for (int round = 1; round <= rounds; round++) {
+            long start = System.nanoTime();
+            long oldSum = parseWithSplit(file);
+            long oldMillis = (System.nanoTime() - start) / 1_000_000;
+            
+            start = System.nanoTime();
+            long newSum = parseWithReader(file);
+            long newMillis = (System.nanoTime() - start) / 1_000_000;
+            
+            if (oldSum != newSum) {
+                throw new AssertionError("Checksums differ: " + oldSum + " vs " + newSum);
+            }
+            System.out.printf("round %d: split %,d ms, PipeRecordReader %,d ms (%.1fx)%n",
+                round, oldMillis, newMillis, (double) oldMillis / Math.max(1, newMillis));
+        }
+    }
+    
+    private static void writeRows(File file, int rows) throws IOException {
+        Random random = new Random(42);
+        LocalDate first = LocalDate.of(2015, 1, 1);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file, StandardCharsets.UTF_8))) {
+            for (int id = 1; id <= rows; id++) {
+                writer.write(id + "|" + TYPES[random.nextInt(TYPES.length)] + "|"
+                    + random.nextInt(100000) + "." + String.format("%02d", random.nextInt(100)) + "|"
+                    + CATEGORIES[random.nextInt(CATEGORIES.length)] + "|Purchase " + random.nextInt(1000) + "|"
+                    + first.plusDays(random.nextInt(4000)));
+                writer.newLine();
+            }
+        }
+    }
+    
+    private static long parseWithSplit(File file) throws IOException {
+        long sum = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\\|");
+                if (parts.length == 6) {
+                    int id = Integer.parseInt(parts[0]);
+                    String type = parts[1];
+                    double amount = Double.parseDouble(parts[2]);
+                    String category = parts[3];
+                    String description = parts[4];
+                    LocalDate date = LocalDate.parse(parts[5]);
+                    sum += checksum(id, Math.round(amount * 100), date.toEpochDay(),
+                        type.length() + category.length() + description.length());
+                }
+            }
+        }
+        return sum;
+    }
+    
+    private static long parseWithReader(File file) throws IOException {
+        long sum = 0;
+        try (PipeRecordReader reader = new PipeRecordReader(file)) {
+            while (reader.next()) {
+                if (reader.getFieldCount() == 6) {
+                    int id = reader.parseInt(0);
+                    String type = reader.getSharedString(1);
+                    long amount = reader.parseMinorUnits(2);
+                    String category = reader.getSharedString(3);
+                    String description = reader.getString(4);
+                    int day = reader.parseEpochDay(5);
+                    sum += checksum(id, amount, day,
+                        type.length() + category.length() + description.length());
+                }
+            }
+        }
+        return sum;
+    }
+    
+    private static long checksum(int id, long amount, long day, int textLength) {
+        return id * 31L + amount * 17 + day * 7 + textLength;
+    }
+}